@@ -15,11 +15,27 @@
  */
 package prog1.graphics;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
+import javafx.geometry.VPos;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
 		
@@ -30,9 +46,29 @@ import javafx.stage.Stage;
 public class ApplicationBase {
 	private static Pane root;
 	private static Scene scene;
+	private static InputLog.Writer recorder;
+	private static FrameCapture capture;
+	private static double captureStart; // animation time when capturing started, negative until the first tick
+	private static long captureTicks; // ticks since capturing started
 	private static DrawFunction onDraw;
 	private static InteractionTimer timer;
+	private static RedrawTimer redrawTimer;
 	private static TickFunction onTick;
+	private static Reconciler reconciler;
+	private static Canvas canvas;
+	private static ImageView view;
+	private static int[] pixels;
+	private static boolean started;
+	private static volatile boolean toolkitRunning;
+	private static boolean drawOnlyWhenDirty;
+	private static boolean dirty; // whether the next tick draws in drawOnlyWhenDirty mode
+	private static final MouseDispatcher mouse = new MouseDispatcher();
+	private static javafx.scene.text.Text statsOverlay;
+	private static boolean drawInBackground;
+	private static ExecutorService drawer;
+	private static final AtomicBoolean drawPending = new AtomicBoolean(); // another image is requested
+	private static final AtomicBoolean drawing = new AtomicBoolean(); // the drawing thread is active
+	private static final AtomicReference<Image> nextFrame = new AtomicReference<>(); // composed, not yet shown
 	
 	private static EventHandler mousePressedHandler;
 	private static EventHandler mouseReleasedHandler;
@@ -55,11 +91,77 @@ public class ApplicationBase {
 	 * @param onDraw the drawing callback function
 	 */
 	public static void start(String title, double width, double height, Stage stage, DrawFunction onDraw) {
+		start(title, width, height, stage, onDraw, Renderer.SCENE_GRAPH);
+	}
+
+	/**
+	 * Needs to be called for starting an application.
+	 * @param title the window title
+	 * @param width the window width
+	 * @param height the window height
+	 * @param stage a JavaFX object passed to the application
+	 * @param onDraw the drawing callback function
+	 * @param renderer the way the images are drawn
+	 */
+	public static void start(String title, double width, double height, Stage stage, 
+			DrawFunction onDraw, Renderer renderer) 
+	{
 		ApplicationBase.onDraw = onDraw;
+		if (!started) {
+			BitmapCache.addRedraw(ApplicationBase::draw);
+		}
+		started = true;
+		setToolkitRunning();
 		root = new Pane();
 //		root.getChildren().addAll(g.render());
 //		scene = new Scene(root, 200+g.width, 200+g.height);
 		scene = new Scene(root, width, height);
+		redrawTimer = new RedrawTimer();
+		scene.addEventFilter(javafx.scene.input.MouseEvent.ANY, e -> {
+			if (recorder != null && InputLog.kind(e.getEventType()) >= 0) {
+				try {
+					recorder.mouse(InputLog.kind(e.getEventType()), new MouseEvent(e));
+				} catch (IOException ex) {
+					recordingFailed(ex);
+				}
+			}
+			if (mouse.dispatch(e)) {
+				e.consume();
+				if (e.getEventType() == javafx.scene.input.MouseEvent.MOUSE_MOVED || 
+						e.getEventType() == javafx.scene.input.MouseEvent.MOUSE_DRAGGED) {
+					drawAfterMove();
+				} else {
+					draw();
+				}
+			}
+		});
+		scene.addEventFilter(KeyEvent.ANY, e -> {
+			if (recorder != null && e.getEventType() != KeyEvent.KEY_TYPED) {
+				try {
+					recorder.key(e.getEventType() == KeyEvent.KEY_PRESSED, key(e));
+				} catch (IOException ex) {
+					recordingFailed(ex);
+				}
+			}
+		});
+		if (renderer == Renderer.CANVAS) {
+			canvas = new Canvas(width, height);
+			canvas.widthProperty().bind(scene.widthProperty());
+			canvas.heightProperty().bind(scene.heightProperty());
+			canvas.widthProperty().addListener(o -> draw());
+			canvas.heightProperty().addListener(o -> draw());
+			root.getChildren().setAll(canvas);
+		} else {
+			canvas = null;
+		}
+		if (renderer == Renderer.SOFTWARE) {
+			view = new ImageView();
+			scene.widthProperty().addListener(o -> draw());
+			scene.heightProperty().addListener(o -> draw());
+			root.getChildren().setAll(view);
+		} else {
+			view = null;
+		}
 
 		stage.setTitle(title);
 		stage.setScene(scene);
@@ -68,6 +170,34 @@ public class ApplicationBase {
 		draw();
 	}
 	
+	/**
+	 * Checks whether the JavaFX toolkit is running, e.g., because a JavaFX 
+	 * application is being constructed or has been started. Otherwise 
+	 * bitmaps and texts are measured without JavaFX. Before an application 
+	 * has been started with this class or with {@link ApplicationBaseNonStatic}, 
+	 * the toolkit is probed with {@link Platform#runLater}, which fails 
+	 * if the toolkit has not been initialized.
+	 * @return true if the JavaFX toolkit is running
+	 */
+	static boolean isToolkitRunning() {
+		if (!toolkitRunning) {
+			try {
+				Platform.runLater(() -> {});
+			} catch (IllegalStateException ex) {
+				return false;
+			}
+			toolkitRunning = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Notes that an application has been started and JavaFX is running.
+	 */
+	static void setToolkitRunning() {
+		toolkitRunning = true;
+	}
+	
 	/**
 	 * Registers another drawing callback function.
 	 * @param onDraw drawing callback function
@@ -76,8 +206,278 @@ public class ApplicationBase {
 		ApplicationBase.onDraw = onDraw;
 	}
 	
+	/**
+	 * Switches incremental rendering on or off. If on, each drawing is 
+	 * compared with the previous one and only the changed parts are 
+	 * rendered again. This reduces the work per frame if only some parts 
+	 * of a large image change between frames. Off by default. Only has an 
+	 * effect when drawing with {@link Renderer#SCENE_GRAPH}.
+	 * @param incremental true to switch incremental rendering on
+	 */
+	public static void setIncrementalRendering(boolean incremental) {
+		if (incremental == (reconciler != null)) {
+			return;
+		}
+		reconciler = incremental ? new Reconciler() : null;
+		if (root != null && canvas == null && view == null) {
+			draw();
+		}
+	}
+	
+	/**
+	 * Switches between drawing on every tick and drawing only when dirty. 
+	 * By default, each call of the tick function is followed by drawing. 
+	 * If drawing only when dirty, a tick is only followed by drawing if 
+	 * {@link #setDirty()} has been called since the last drawing, e.g., by 
+	 * the tick function when the model has changed. Key and mouse events 
+	 * set the dirty flag as well. Saves the work of drawing identical 
+	 * frames when an application is idle.
+	 * @param onlyWhenDirty true to draw only when dirty
+	 */
+	public static void setDrawOnlyWhenDirty(boolean onlyWhenDirty) {
+		drawOnlyWhenDirty = onlyWhenDirty;
+		dirty = true;
+	}
+	
+	/**
+	 * Marks the drawing as outdated, so that the next tick draws. Only 
+	 * needed if {@link #setDrawOnlyWhenDirty(boolean)} is on.
+	 */
+	public static void setDirty() {
+		dirty = true;
+	}
+	
+	/**
+	 * Updates the output after an event: on the next tick, or immediately 
+	 * if there is no tick function.
+	 */
+	private static void drawAfterEvent() {
+		if (onTick == null) {
+			draw();
+		} else {
+			dirty = true;
+		}
+	}
+	
+	/**
+	 * Updates the output after a mouse move or drag. Moves arrive at a much 
+	 * higher rate than frames are shown, so the output is only updated once 
+	 * on the next pulse, after all moves up to then have been delivered. 
+	 * If there is a tick function, the next tick updates it.
+	 */
+	private static void drawAfterMove() {
+		if (onTick == null) {
+			redrawTimer.start();
+		} else {
+			dirty = true;
+		}
+	}
+	
+	/**
+	 * Shows or hides the frame timings of {@link FrameStats} in the upper 
+	 * left corner of the window. Showing them enables {@link FrameStats}.
+	 * @param show true to show the frame timings
+	 */
+	public static void setFrameStatsOverlay(boolean show) {
+		if (show == (statsOverlay != null)) {
+			return;
+		}
+		if (show) {
+			FrameStats.setEnabled(true);
+			statsOverlay = new javafx.scene.text.Text(4, 4, "");
+			statsOverlay.setTextOrigin(VPos.TOP);
+			statsOverlay.setFont(Font.font("Monospaced", 11));
+			statsOverlay.setFill(Color.BLACK);
+			statsOverlay.setStroke(Color.WHITE);
+			statsOverlay.setStrokeWidth(0.3);
+			statsOverlay.setMouseTransparent(true);
+		} else {
+			if (root != null) {
+				root.getChildren().remove(statsOverlay);
+			}
+			statsOverlay = null;
+		}
+		if (root != null) {
+			draw();
+		}
+	}
+	
+	/**
+	 * Switches drawing in the background on or off. If on, the drawing 
+	 * function runs on a separate thread, so that composing an expensive 
+	 * image neither blocks event handling nor the rendering of the previous 
+	 * frame. The JavaFX thread only renders the latest finished image; 
+	 * images that are superseded before they are shown are skipped. The 
+	 * drawing function must then only read data that is not modified at the 
+	 * same time, e.g., an immutable snapshot of the model that the tick and 
+	 * event functions replace as a whole. Off by default.
+	 * @param background true to draw in the background
+	 */
+	public static void setDrawInBackground(boolean background) {
+		if (background && drawer == null) {
+			drawer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "draw");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		drawInBackground = background;
+	}
+	
 	protected static void draw() {
-		root.getChildren().setAll(onDraw.apply().render());
+		startDraw();
+		if (drawInBackground) {
+			drawPending.set(true);
+			if (drawing.compareAndSet(false, true)) {
+				drawer.execute(ApplicationBase::drawLoop);
+			}
+			return;
+		}
+		show(compose());
+	}
+	
+	/**
+	 * Records the drawing and cancels a pending redraw, which is covered 
+	 * by this one.
+	 */
+	private static void startDraw() {
+		dirty = false;
+		if (recorder != null) {
+			try {
+				recorder.draw();
+			} catch (IOException ex) {
+				recordingFailed(ex);
+			}
+		}
+		if (redrawTimer != null) {
+			redrawTimer.stop();
+		}
+	}
+	
+	/**
+	 * Draws on the JavaFX thread and adds the image to the capture. Called 
+	 * once per tick while capturing, whether or not the tick function has 
+	 * set the dirty flag and whether or not drawing in the background.
+	 */
+	private static void drawCaptured() {
+		startDraw();
+		Image image = compose();
+		show(image);
+		capture.add(image);
+	}
+	
+	/**
+	 * Calls the drawing function.
+	 * @return the image to show
+	 */
+	private static Image compose() {
+		long t = FrameStats.start();
+		Image image = onDraw.apply();
+		FrameStats.stop(FrameStats.Phase.DRAW, t);
+		return image;
+	}
+	
+	/**
+	 * Composes images on the drawing thread as long as new ones are 
+	 * requested, and hands each over to the JavaFX thread.
+	 */
+	private static void drawLoop() {
+		do {
+			while (drawPending.getAndSet(false)) {
+				try {
+					Image image = compose();
+					image.prepare();
+					if (nextFrame.getAndSet(image) == null) {
+						Platform.runLater(ApplicationBase::showNextFrame);
+					}
+				} catch (RuntimeException ex) {
+					System.err.println("ApplicationBase.draw:\n" + ex);
+				}
+			}
+			drawing.set(false);
+			// a request may have arrived after the loop ended
+		} while (drawPending.get() && drawing.compareAndSet(false, true));
+	}
+	
+	/**
+	 * Shows the latest image composed on the drawing thread.
+	 */
+	private static void showNextFrame() {
+		Image image = nextFrame.getAndSet(null);
+		if (image != null) {
+			show(image);
+		}
+	}
+	
+	/**
+	 * Renders the image and attaches it to the scene.
+	 * @param image the image to show
+	 */
+	private static void show(Image image) {
+		long t;
+		mouse.setFrame(image);
+		if (capture != null && timer == null) { // without a tick function, capture each shown image
+			capture.add(image);
+		}
+		if (canvas != null) {
+			t = FrameStats.start();
+			GraphicsContext gc = canvas.getGraphicsContext2D();
+			gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+			image.draw(gc);
+			FrameStats.stop(FrameStats.Phase.RENDER, t);
+		} else if (view != null) {
+			drawSoftware(image);
+		} else if (reconciler != null) {
+			t = FrameStats.start();
+			reconciler.update(image);
+			FrameStats.stop(FrameStats.Phase.RENDER, t);
+			t = FrameStats.start();
+			if (root.getChildren().isEmpty() || root.getChildren().get(0) != reconciler.node()) {
+				root.getChildren().setAll(reconciler.node());
+			}
+			FrameStats.stop(FrameStats.Phase.ATTACH, t);
+		} else {
+			t = FrameStats.start();
+			javafx.scene.Node node = image.render();
+			FrameStats.stop(FrameStats.Phase.RENDER, t);
+			t = FrameStats.start();
+			root.getChildren().setAll(node);
+			FrameStats.stop(FrameStats.Phase.ATTACH, t);
+		}
+		if (statsOverlay != null) {
+			statsOverlay.setText(FrameStats.summary());
+			ObservableList<javafx.scene.Node> nodes = root.getChildren();
+			if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != statsOverlay) {
+				nodes.remove(statsOverlay);
+				nodes.add(statsOverlay);
+			}
+		}
+	}
+	
+	/**
+	 * Rasterizes the image into the pixels of the image view.
+	 * @param frame the image to rasterize
+	 */
+	private static void drawSoftware(Image frame) {
+		int w = (int) Math.ceil(scene.getWidth());
+		int h = (int) Math.ceil(scene.getHeight());
+		if (w <= 0 || h <= 0) {
+			return;
+		}
+		WritableImage image = (WritableImage) view.getImage();
+		if (image == null || image.getWidth() != w || image.getHeight() != h) {
+			image = new WritableImage(w, h);
+			view.setImage(image);
+			pixels = new int[w * h];
+		} else {
+			Arrays.fill(pixels, 0);
+		}
+		long t = FrameStats.start();
+		Rasterizer.rasterize(frame, pixels, w, h);
+		FrameStats.stop(FrameStats.Phase.RENDER, t);
+		t = FrameStats.start();
+		image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+		FrameStats.stop(FrameStats.Phase.ATTACH, t);
 	}
 	
 	/**
@@ -95,9 +495,7 @@ public class ApplicationBase {
 //			System.out.println(Thread.currentThread());
 			onMouse.apply(new MouseEvent(e), null);
 			e.consume(); // prevent further processing
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterEvent();
 		};
 		scene.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_PRESSED, mousePressedHandler);
 	}
@@ -117,9 +515,7 @@ public class ApplicationBase {
 //			System.out.println(Thread.currentThread());
 			onMouse.apply(new MouseEvent(e), null);
 			e.consume(); // prevent further processing
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterEvent();
 		};
 		scene.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_RELEASED, mouseReleasedHandler);
 	}
@@ -139,9 +535,7 @@ public class ApplicationBase {
 //			System.out.println(Thread.currentThread());
 			onMouse.apply(new MouseEvent(e), null);
 			e.consume(); // prevent further processing
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterMove();
 		};
 		scene.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_DRAGGED, mouseDraggedHandler);
 	}
@@ -161,9 +555,7 @@ public class ApplicationBase {
 //			System.out.println(Thread.currentThread());
 			onMouse.apply(new MouseEvent(e), null);
 			e.consume(); // prevent further processing
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterMove();
 		};
 		scene.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_MOVED, mouseMovedHandler);
 	}
@@ -193,15 +585,9 @@ public class ApplicationBase {
 	 */
 	public static void setOnKeyPressed(KeyFunction onKeyPressed) {
 		keyPressedHandler = (EventHandler<KeyEvent>) e -> {
-			String s = e.getText();
-			if (s.length() == 0) {
-				s = e.getCode().toString();
-			}
-			onKeyPressed.apply(s);
+			onKeyPressed.apply(key(e));
 			e.consume();
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterEvent();
 		};
 		scene.setOnKeyPressed(keyPressedHandler);
 	}
@@ -212,19 +598,111 @@ public class ApplicationBase {
 	 */
 	public static void setOnKeyReleased(KeyFunction onKeyReleased) {
 		keyReleasedHandler = (EventHandler<KeyEvent>) e -> {
-			String s = e.getText();
-			if (s.length() == 0) {
-				s = e.getCode().toString();
-			}
-			onKeyReleased.apply(s);
+			onKeyReleased.apply(key(e));
 			e.consume();
-			if (onTick == null) { // update output on next tick, or immediately, if not available, todo: makes sense?
-				draw();
-			}
+			drawAfterEvent();
 		};
 		scene.setOnKeyReleased(keyReleasedHandler);
 	}
 
+	/**
+	 * Returns the key of a key event as passed to the key functions.
+	 * @param e the key event
+	 * @return the key or uppercase key code
+	 */
+	private static String key(KeyEvent e) {
+		String s = e.getText();
+		if (s.length() == 0) {
+			s = e.getCode().toString();
+		}
+		return s;
+	}
+
+	/**
+	 * Starts recording the input of the application into a binary log: all 
+	 * mouse and key events of the scene, the ticks, and the drawings, with 
+	 * their times. The log can be replayed with 
+	 * {@link HeadlessApplication#replay(String, boolean)}, which calls the 
+	 * functions of the application with the same arguments in the same 
+	 * order. Stops a previous recording.
+	 * @param fileName the name of the log file
+	 * @return true if the file could be created
+	 */
+	public static boolean startRecording(String fileName) {
+		stopRecording();
+		try {
+			recorder = new InputLog.Writer(fileName);
+		} catch (IOException ex) {
+			System.err.println("ApplicationBase.startRecording:\n" + ex);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stops recording and closes the log file.
+	 */
+	public static void stopRecording() {
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException ex) {
+				System.err.println("ApplicationBase.stopRecording:\n" + ex);
+			}
+			recorder = null;
+		}
+	}
+
+	/**
+	 * Starts capturing each shown image into the given capture, e.g., 
+	 * {@link FrameCapture#apng(String, int, int, double)}. While capturing, 
+	 * each tick draws and captures exactly one image, and the time passed 
+	 * to the tick function advances by exactly one frame per tick, 
+	 * according to the frame rate of the capture, so that the captured 
+	 * animation plays at the right speed even if encoding slows down the 
+	 * application. Images drawn in between, e.g., after mouse events, are 
+	 * shown but not captured. Without a tick function, each shown image is 
+	 * captured. Stops a previous capture.
+	 * @param capture the capture
+	 */
+	public static void startCapture(FrameCapture capture) {
+		stopCapture();
+		ApplicationBase.capture = capture;
+		captureStart = -1;
+		captureTicks = 0;
+	}
+
+	/**
+	 * Stops capturing and waits until all captured frames are written.
+	 * @return true if all frames were successfully written, false otherwise
+	 */
+	public static boolean stopCapture() {
+		if (capture == null) {
+			return true;
+		}
+		boolean success = capture.close();
+		capture = null;
+		return success;
+	}
+
+	private static void recordingFailed(IOException ex) {
+		System.err.println("ApplicationBase: recording stopped:\n" + ex);
+		stopRecording();
+	}
+
+	/**
+	 * Draws once on the next pulse after being started.
+	 */
+	private static class RedrawTimer extends AnimationTimer {
+
+		@Override
+		public void handle(long now) {
+			stop();
+			draw();
+		}
+
+	}
+
 	private static class InteractionTimer extends AnimationTimer {
 
 		private long nowInit;
@@ -236,11 +714,34 @@ public class ApplicationBase {
 				nowInit = now;
 			}
 			double sec = (now - nowInit) * 1.0e-9;
+			boolean capturing = capture != null; // not if started by the tick function
+			if (capturing) {
+				if (captureStart < 0) {
+					captureStart = sec;
+				}
+				sec = captureStart + captureTicks++ / capture.getFrameRate();
+				nowInit = now - (long) (sec * 1.0e9); // continue from the simulated time after capturing
+			}
 			// System.out.println(sec);
 			// System.out.println(Thread.currentThread());
 			if (onTick != null) {
+				long frame = FrameStats.start();
+				if (recorder != null) {
+					try {
+						recorder.tick(sec);
+					} catch (IOException ex) {
+						recordingFailed(ex);
+					}
+				}
+				long t = FrameStats.start();
 				onTick.apply(sec);
-				draw();
+				FrameStats.stop(FrameStats.Phase.TICK, t);
+				if (capturing && capture != null) {
+					drawCaptured();
+				} else if (dirty || !drawOnlyWhenDirty) {
+					draw();
+				}
+				FrameStats.stop(FrameStats.Phase.FRAME, frame);
 			}
 		}
 
@@ -34,6 +34,7 @@ public class ApplicationBaseNonStatic {
     private DrawFunction onDraw;
     private InteractionTimer timer;
     private TickFunction onTick;
+    private final MouseDispatcher mouse = new MouseDispatcher();
 
     private EventHandler mousePressedHandler;
     private EventHandler mouseReleasedHandler;
@@ -60,10 +61,19 @@ public class ApplicationBaseNonStatic {
     public static void start(String title, double width, double height, Stage stage, DrawFunction onDraw) {
         ApplicationBaseNonStatic ab = new ApplicationBaseNonStatic();
         ab.onDraw = onDraw;
+        ApplicationBase.setToolkitRunning();
         ab.root = new Pane();
 //		root.getChildren().addAll(g.render());
 //		scene = new Scene(root, 200+g.width, 200+g.height);
         ab.scene = new Scene(ab.root, width, height);
+        ab.scene.addEventFilter(javafx.scene.input.MouseEvent.ANY, e -> {
+            if (ab.mouse.dispatch(e)) {
+                e.consume();
+                ab.draw();
+            }
+        });
+
+        BitmapCache.addRedraw(ab::draw);
 
         stage.setTitle(title);
         stage.setScene(ab.scene);
@@ -82,7 +92,9 @@ public class ApplicationBaseNonStatic {
     }
 
     protected void draw() {
-        root.getChildren().setAll(onDraw.apply().render());
+        Image image = onDraw.apply();
+        mouse.setFrame(image);
+        root.getChildren().setAll(image.render());
     }
 
     /**
@@ -40,4 +40,65 @@ class Arc extends Shape {
 		return render(arc);
 	}
 
+	@Override
+	protected void path(Path p) {
+		double r = width / 2.0;
+		p.moveTo(r, r);
+		p.arc(r, r, r, r, startAngle, lengthAngle);
+		p.closePath();
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		double r = width / 2.0;
+		double p = strokePadding();
+		double a1 = Math.toRadians(startAngle);
+		double a2 = Math.toRadians(startAngle + lengthAngle);
+		double x1 = r + r * Math.cos(a1);
+		double y1 = r - r * Math.sin(a1);
+		double x2 = r + r * Math.cos(a2);
+		double y2 = r - r * Math.sin(a2);
+		e.addDisk(r, r, p);
+		e.addDisk(x1, y1, p);
+		e.addDisk(x2, y2, p);
+		// points of the arc that are extreme in x- and y-direction after transformation
+		Matrix m = e.matrix();
+		double[] extremes = {
+			Math.atan2(-m.mxy, m.mxx), 
+			Math.atan2(-m.myy, m.myx)
+		};
+		for (double a : extremes) {
+			for (int k = 0; k < 2; k++, a += Math.PI) {
+				if (containsAngle(Math.toDegrees(a))) {
+					e.addDisk(r + r * Math.cos(a), r - r * Math.sin(a), p);
+				}
+			}
+		}
+		// corners of the pie slice, arc tangents in direction of travel
+		double s = Math.signum(lengthAngle);
+		addMiter(e, r, r, r - x2, r - y2, x1 - r, y1 - r);
+		addMiter(e, x1, y1, x1 - r, y1 - r, -s * Math.sin(a1), -s * Math.cos(a1));
+		addMiter(e, x2, y2, -s * Math.sin(a2), -s * Math.cos(a2), r - x2, r - y2);
+	}
+
+	/**
+	 * Checks whether the given angle lies on the arc.
+	 * @param angle angle in degrees
+	 * @return true if the angle lies between start angle and end angle
+	 */
+	private boolean containsAngle(double angle) {
+		double length = Math.abs(lengthAngle);
+		if (length >= 360) return true;
+		double d = lengthAngle >= 0 ? angle - startAngle : startAngle - angle;
+		d = ((d % 360) + 360) % 360;
+		return d <= length;
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		if (!sameSize(image)) return false;
+		Arc a = (Arc) image;
+		return a.startAngle == startAngle && a.lengthAngle == lengthAngle;
+	}
+
 }
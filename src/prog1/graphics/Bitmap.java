@@ -15,24 +15,86 @@
  */
 package prog1.graphics;
 
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import javafx.scene.canvas.GraphicsContext;
+import javax.imageio.ImageIO;
+
 /**
- * A bitmap from a file (jpg, png, or gif).
+ * A bitmap from a file (jpg, png, or gif). The decoded file is shared by 
+ * all bitmaps of the same url.
  * @author michaelrohs
  */
 class Bitmap extends Image {
-	private final javafx.scene.image.Image image;
+	private final BitmapData data;
 
 	public Bitmap(String url) {
-		super(0, 0);
-		image = new javafx.scene.image.Image(url, false);
-//		System.out.printf("image: %f, %f\n", image.getWidth(), image.getHeight());
-		width = image.getWidth();
-		height = image.getHeight();
+		this(BitmapCache.get(url));
+	}
+
+	Bitmap(BitmapData data) {
+		super(data.width, data.height);
+		this.data = data;
+	}
+
+	/**
+	 * Writes an image element with the bitmap embedded as png data.
+	 * @param out the SVG writer
+	 * @throws IOException if writing fails
+	 */
+	@Override
+	protected void svg(SvgWriter out) throws IOException {
+		BufferedImage b = data.awtImage();
+		if (b == null) {
+			return;
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(b, "png", png);
+		out.append("<image").attribute("width", width).attribute("height", height)
+				.append(" href=\"data:image/png;base64,")
+				.append(Base64.getEncoder().encodeToString(png.toByteArray())).append("\"/>\n");
+	}
+
+	@Override
+	void prepare() {
+		data.awtImage();
 	}
 
 	@Override
 	protected javafx.scene.Node render() {
-		return new javafx.scene.image.ImageView(image);
+		FrameStats.countNode();
+		return new javafx.scene.image.ImageView(data.fxImage());
+	}
+
+	@Override
+	protected void draw(GraphicsContext gc) {
+		gc.drawImage(data.fxImage(), 0, 0);
+	}
+
+	@Override
+	protected void draw(Graphics2D g) {
+		BufferedImage b = data.awtImage();
+		if (b != null) {
+			g.drawImage(b, 0, 0, null);
+		}
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		e.add(0, 0);
+		e.add(width, 0);
+		e.add(width, height);
+		e.add(0, height);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		if (image.getClass() != Bitmap.class) return false;
+		Bitmap b = (Bitmap) image;
+		return b.data == data;
 	}
 
 }
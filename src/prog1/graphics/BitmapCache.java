@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Caches decoded bitmap files by url, so that a file is only decoded once, 
+ * even if a bitmap is created for each frame. The least recently used 
+ * files are removed when the decoded pixels exceed the maximum size. Files 
+ * may also be loaded in the background.
+ * @author michaelrohs
+ */
+class BitmapCache {
+	private static final Map<String, CompletableFuture<BitmapData>> cache = 
+			new LinkedHashMap<>(16, 0.75f, true); // access order
+	private static long maxBytes = 64L * 1024 * 1024;
+	private static long bytes; // size of the decoded pixels in the cache
+	private static final List<Runnable> redraws = new CopyOnWriteArrayList<>();
+	private static boolean redrawPending; // only accessed on the JavaFX application thread
+
+	private static final ExecutorService loader = Executors.newFixedThreadPool(2, r -> {
+		Thread t = new Thread(r, "bitmap loader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private BitmapCache() {}
+
+	/**
+	 * Sets the maximum size of the decoded pixels in the cache.
+	 * The most recently loaded file is always kept, even if it is larger.
+	 * @param maxBytes the maximum size in bytes
+	 */
+	static synchronized void setMaxBytes(long maxBytes) {
+		BitmapCache.maxBytes = maxBytes;
+		evict(null);
+	}
+
+	/**
+	 * Registers a function that draws an application again. Called by the 
+	 * application bases when they are started. After a file has been loaded 
+	 * in the background, the registered functions are called on the JavaFX 
+	 * application thread.
+	 * @param redraw draws the application again
+	 */
+	static void addRedraw(Runnable redraw) {
+		redraws.add(redraw);
+	}
+
+	/**
+	 * Returns the decoded bitmap file. Decodes the file if it is not in the 
+	 * cache. Waits if it is currently being loaded in the background.
+	 * @param url the location of the image file
+	 * @return the decoded file
+	 */
+	static BitmapData get(String url) {
+		CompletableFuture<BitmapData> f;
+		boolean load = false;
+		synchronized (BitmapCache.class) {
+			f = cache.get(url);
+			if (f == null || f.isCompletedExceptionally()) {
+				f = new CompletableFuture<>();
+				cache.put(url, f);
+				load = true;
+			}
+		}
+		if (load) {
+			load(url, f);
+		}
+		try {
+			return f.join();
+		} catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the decoded bitmap file if it is in the cache, otherwise 
+	 * starts loading it in the background. When loading has finished, the 
+	 * function is called with the decoded file and the application is drawn 
+	 * again (both on the JavaFX application thread, if an application has 
+	 * been started). A file that failed to load is loaded again.
+	 * @param url the location of the image file
+	 * @param onLoaded called when loading has finished, may be null
+	 * @return the decoded file, or null if it is not loaded yet
+	 */
+	static BitmapData getAsync(String url, Consumer<BitmapData> onLoaded) {
+		CompletableFuture<BitmapData> f;
+		boolean load;
+		synchronized (BitmapCache.class) {
+			f = cache.get(url);
+			load = f == null || f.isCompletedExceptionally();
+			if (load) {
+				f = new CompletableFuture<>();
+				cache.put(url, f);
+			}
+		}
+		if (!load && f.isDone()) {
+			return f.join();
+		}
+		if (load || onLoaded != null) {
+			f.thenAccept(data -> whenLoaded(data, onLoaded));
+		}
+		if (load) {
+			CompletableFuture<BitmapData> g = f;
+			loader.execute(() -> load(url, g));
+		}
+		return null;
+	}
+
+	/**
+	 * Calls the function and draws the application again. Does so on the 
+	 * JavaFX application thread if an application has been started. The 
+	 * functions of all callers waiting for the same file are called before 
+	 * the application is drawn, and it is drawn only once.
+	 * @param data the decoded file
+	 * @param onLoaded the function to call, may be null
+	 */
+	private static void whenLoaded(BitmapData data, Consumer<BitmapData> onLoaded) {
+		if (!redraws.isEmpty()) {
+			Platform.runLater(() -> {
+				if (onLoaded != null) {
+					onLoaded.accept(data);
+				}
+				if (!redrawPending) {
+					redrawPending = true;
+					Platform.runLater(() -> {
+						redrawPending = false;
+						redraws.forEach(Runnable::run);
+					});
+				}
+			});
+		} else if (onLoaded != null) {
+			onLoaded.accept(data);
+		}
+	}
+
+	/**
+	 * Decodes the file, completes the future, and removes the least recently 
+	 * used files if the cache is too large. A file that failed to load is 
+	 * removed from the cache, so that it is loaded again on the next request.
+	 * @param url the location of the image file
+	 * @param f the future to complete
+	 */
+	private static void load(String url, CompletableFuture<BitmapData> f) {
+		BitmapData data;
+		try {
+			data = new BitmapData(url);
+		} catch (RuntimeException ex) {
+			System.err.println("Graphics.bitmap: " + url + "\n" + ex);
+			synchronized (BitmapCache.class) {
+				if (cache.get(url) == f) {
+					cache.remove(url);
+				}
+			}
+			f.completeExceptionally(ex);
+			return;
+		}
+		synchronized (BitmapCache.class) {
+			if (cache.get(url) == f) {
+				bytes += data.bytes();
+				evict(f);
+			}
+		}
+		f.complete(data);
+	}
+
+	/**
+	 * Removes the least recently used, completely loaded files until the 
+	 * cache is small enough.
+	 * @param keep a file that should not be removed, may be null
+	 */
+	private static void evict(CompletableFuture<BitmapData> keep) {
+		Iterator<CompletableFuture<BitmapData>> i = cache.values().iterator();
+		while (bytes > maxBytes && i.hasNext()) {
+			CompletableFuture<BitmapData> f = i.next();
+			if (f != keep && f.isDone()) {
+				i.remove();
+				if (!f.isCompletedExceptionally()) {
+					bytes -= f.join().bytes();
+				}
+			}
+		}
+	}
+
+}
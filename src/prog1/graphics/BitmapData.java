@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import javafx.scene.image.PixelFormat;
+import javax.imageio.ImageIO;
+
+/**
+ * The decoded pixels of a bitmap file, shared by all bitmaps of the same 
+ * url. In an application started with {@link ApplicationBase} the file is 
+ * decoded by JavaFX, otherwise by ImageIO, so that bitmaps can be used 
+ * without a running JavaFX toolkit. The other representation is created 
+ * on first use.
+ * @author michaelrohs
+ */
+class BitmapData {
+	final String url;
+	final double width, height;
+	private javafx.scene.image.Image image; // for JavaFX
+	private BufferedImage pixels; // for Java2D
+
+	/**
+	 * Loads the bitmap file. Blocks until the file is decoded.
+	 * @param url the location of the image file
+	 * @throws IllegalArgumentException if the url is invalid
+	 */
+	BitmapData(String url) {
+		this.url = url;
+		if (ApplicationBase.isToolkitRunning()) {
+			image = new javafx.scene.image.Image(url, false);
+			width = image.getWidth();
+			height = image.getHeight();
+		} else {
+			pixels = read(url);
+			width = pixels == null ? 0 : pixels.getWidth();
+			height = pixels == null ? 0 : pixels.getHeight();
+		}
+	}
+
+	/**
+	 * Loads the bitmap with ImageIO. Like JavaFX, treats a url without 
+	 * scheme as a path relative to the class path.
+	 * @param url the location of the image file
+	 * @return the image, or null if it could not be loaded
+	 */
+	private static BufferedImage read(String url) {
+		URL u;
+		try {
+			u = new URL(url);
+		} catch (MalformedURLException ex) {
+			String path = url.startsWith("/") ? url.substring(1) : url;
+			u = Thread.currentThread().getContextClassLoader().getResource(path);
+			if (u == null) {
+				throw new IllegalArgumentException("Invalid URL or resource not found");
+			}
+		}
+		try {
+			return ImageIO.read(u);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the approximate memory used by the decoded pixels.
+	 * @return the number of bytes
+	 */
+	long bytes() {
+		return 4L * (long) width * (long) height;
+	}
+
+	/**
+	 * Returns the bitmap for JavaFX.
+	 * @return the JavaFX image
+	 */
+	synchronized javafx.scene.image.Image fxImage() {
+		if (image == null) {
+			image = new javafx.scene.image.Image(url, false);
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the bitmap for Java2D.
+	 * @return the Java2D image, null if it could not be loaded
+	 */
+	synchronized BufferedImage awtImage() {
+		if (pixels == null && image != null && width > 0 && height > 0) {
+			int w = (int) width;
+			int h = (int) height;
+			int[] argb = new int[w * h];
+			image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), argb, 0, w);
+			pixels = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			pixels.setRGB(0, 0, w, h, argb, 0, w);
+		}
+		return pixels;
+	}
+
+}
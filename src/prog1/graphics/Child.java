@@ -15,6 +15,11 @@
  */
 package prog1.graphics;
 
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.transform.Affine;
 import javafx.scene.transform.Transform;
 
 /**
@@ -31,6 +36,22 @@ public class Child {
 	
 	public double width;
 	public double height;
+	
+	// linear part of the affine matrix (rotation and scaling) and the angle and 
+	// scale it was computed for, the translation part of the matrix is (x, y)
+	private double mxx = 1.0, mxy = 0.0, myx = 0.0, myy = 1.0;
+	private double matrixAngle, matrixXScale = 1.0, matrixYScale = 1.0;
+	
+	// bounds relative to (x, y), which stay valid when the child is moved, 
+	// and the angle and scale they were computed for
+	private boolean hasBounds;
+	private double boundsDx, boundsDy, boundsWidth, boundsHeight;
+	private double boundsAngle, boundsXScale, boundsYScale;
+	
+	// position, angle, and scale when the parent group last included this 
+	// child in its extent
+	private double includedX, includedY, includedAngle;
+	private double includedXScale = 1.0, includedYScale = 1.0;
 
 	public Child(Image image, double x, double y) {
 		this.image = image;
@@ -42,39 +63,299 @@ public class Child {
 	
 	public void rotate(double a) {
 		this.angle = a;
-
-		Transform tr = Transform.rotate(-angle, 0, 0); // todo: potentially add as attributes to avoid recomputation when rendering
-		Transform tt = Transform.translate(x, y);
-		Transform ts = Transform.scale(xScale, yScale);
-		
-		Rect bb = image.boundingBox(tt.createConcatenation(tr).createConcatenation(ts));
-//		System.out.println("bb = " + bb);
-
-		x = -bb.x;
-		y = -bb.y;
-		width = bb.width;
-		height = bb.height;
+		fitBounds();
 	}
 
 	public void scale(double xScale, double yScale) {
 		this.xScale = xScale;
 		this.yScale = yScale;
+		fitBounds();
+	}
 
-		Transform tr = Transform.rotate(-angle, 0, 0); // todo: potentially add as attributes to avoid recomputation when rendering
-		Transform tt = Transform.translate(x, y);
-		Transform ts = Transform.scale(xScale, yScale);
-		
-		Rect bb = image.boundingBox(tt.createConcatenation(tr).createConcatenation(ts));
-//		System.out.println("bb = " + bb);
+	/**
+	 * Moves this child such that its bounding box starts at the origin and 
+	 * sets the size to the size of the bounding box.
+	 */
+	private void fitBounds() {
+		updateBounds();
+		x = -(x + boundsDx);
+		y = -(y + boundsDy);
+		width = boundsWidth;
+		height = boundsHeight;
+	}
+	
+	/**
+	 * Returns the bounding box of the image in parent coordinates.
+	 * @return the bounding box
+	 */
+	Rect bounds() {
+		updateBounds();
+		return new Rect(x + boundsDx, y + boundsDy, boundsWidth, boundsHeight);
+	}
+
+	/**
+	 * Returns the minimum x-coordinate of the bounding box of the image in 
+	 * parent coordinates.
+	 * @return the minimum x-coordinate
+	 */
+	double minX() {
+		updateBounds();
+		return x + boundsDx;
+	}
 
-		x = -bb.x;
-		y = -bb.y;
-		width = bb.width;
-		height = bb.height;
+	/**
+	 * Returns the minimum y-coordinate of the bounding box of the image in 
+	 * parent coordinates.
+	 * @return the minimum y-coordinate
+	 */
+	double minY() {
+		updateBounds();
+		return y + boundsDy;
+	}
+
+	/**
+	 * Returns the maximum x-coordinate of the bounding box of the image in 
+	 * parent coordinates.
+	 * @return the maximum x-coordinate
+	 */
+	double maxX() {
+		updateBounds();
+		return x + boundsDx + boundsWidth;
+	}
+
+	/**
+	 * Returns the maximum y-coordinate of the bounding box of the image in 
+	 * parent coordinates.
+	 * @return the maximum y-coordinate
+	 */
+	double maxY() {
+		updateBounds();
+		return y + boundsDy + boundsHeight;
+	}
+
+	/**
+	 * Records the current position, angle, and scale as the ones the parent 
+	 * group has included in its extent.
+	 */
+	void markIncluded() {
+		includedX = x;
+		includedY = y;
+		includedAngle = angle;
+		includedXScale = xScale;
+		includedYScale = yScale;
+	}
+
+	/**
+	 * Checks whether this child has been moved, rotated, or scaled since 
+	 * the parent group has included it in its extent.
+	 * @return true if changed
+	 */
+	boolean isChanged() {
+		return x != includedX || y != includedY || angle != includedAngle || 
+				xScale != includedXScale || yScale != includedYScale;
+	}
+
+	/**
+	 * Recomputes the cached bounding box if angle or scale have changed. 
+	 * The box is kept relative to (x, y), so moving the child does not 
+	 * invalidate it.
+	 */
+	private void updateBounds() {
+		if (hasBounds && angle == boundsAngle && xScale == boundsXScale && yScale == boundsYScale) {
+			return;
+		}
+		updateMatrix();
+		Extent e = new Extent(new Matrix(mxx, mxy, 0, myx, myy, 0));
+		image.addBounds(e);
+		FrameStats.countBoundingBox();
+		hasBounds = true;
+		boundsDx = e.minX();
+		boundsDy = e.minY();
+		boundsWidth = e.maxX() - e.minX();
+		boundsHeight = e.maxY() - e.minY();
+		boundsAngle = angle;
+		boundsXScale = xScale;
+		boundsYScale = yScale;
+	}
+
+	/**
+	 * Adds the bounding box of the image, transformed by this child and by 
+	 * the transformation of the extent, to the extent. Under a pure 
+	 * translation the cached bounding box is used.
+	 * @param e the extent to add to
+	 */
+	void addBounds(Extent e) {
+		Matrix m = e.matrix();
+		if (m.isTranslation()) {
+			e.addTransformedBox(minX() + m.tx, minY() + m.ty, maxX() + m.tx, maxY() + m.ty);
+			return;
+		}
+		updateMatrix();
+		double xx = m.mxx, xy = m.mxy, tx = m.tx, yx = m.myx, yy = m.myy, ty = m.ty;
+		e.concatenate(mxx, mxy, x, myx, myy, y);
+		image.addBounds(e);
+		FrameStats.countBoundingBox();
+		e.setMatrix(xx, xy, tx, yx, yy, ty);
+	}
+	
+	/**
+	 * Recomputes the cached matrix if angle or scale have changed.
+	 */
+	private void updateMatrix() {
+		if (angle == matrixAngle && xScale == matrixXScale && yScale == matrixYScale) {
+			return;
+		}
+		double a = Math.toRadians(-angle);
+		double cos = Math.cos(a);
+		double sin = Math.sin(a);
+		mxx = cos * xScale;
+		mxy = -sin * yScale;
+		myx = sin * xScale;
+		myy = cos * yScale;
+		matrixAngle = angle;
+		matrixXScale = xScale;
+		matrixYScale = yScale;
+	}
+	
+	/**
+	 * Returns the transformation from image coordinates to parent coordinates: 
+	 * translation by (x, y), rotation by angle, and scaling by xScale, yScale.
+	 * @return the transformation
+	 */
+	Transform transform() {
+		updateMatrix();
+		return new Affine(mxx, mxy, x, myx, myy, y);
+	}
+	
+	/**
+	 * Checks whether the transformation of this child is a pure translation.
+	 * @return true if neither rotated nor scaled
+	 */
+	boolean isTranslation() {
+		updateMatrix();
+		return mxx == 1.0 && mxy == 0.0 && myx == 0.0 && myy == 1.0;
 	}
 
 	protected javafx.scene.Node render() {
+		return render(0, 0);
+	}
+
+	/**
+	 * Renders the image of this child moved by (dx, dy).
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 * @return the JavaFX scene graph Node that represents this child
+	 */
+	protected javafx.scene.Node render(double dx, double dy) {
 		javafx.scene.Node jfxNode = image.render();
+		place(jfxNode, dx, dy);
+		return jfxNode;
+	}
+
+	/**
+	 * Draws the image of this child onto a canvas.
+	 * @param gc the graphics context to draw onto
+	 */
+	void draw(GraphicsContext gc) {
+		draw(gc, 0, 0);
+	}
+
+	/**
+	 * Draws the image of this child moved by (dx, dy) onto a canvas.
+	 * @param gc the graphics context to draw onto
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 */
+	void draw(GraphicsContext gc, double dx, double dy) {
+		if (isTranslation()) {
+			gc.translate(x + dx, y + dy);
+			image.draw(gc);
+			gc.translate(-(x + dx), -(y + dy));
+		} else {
+			gc.save();
+			gc.transform(mxx, myx, mxy, myy, x + dx, y + dy);
+			image.draw(gc);
+			gc.restore();
+		}
+	}
+
+	/**
+	 * Draws the image of this child with Java2D.
+	 * @param g the Java2D graphics to draw onto
+	 */
+	void draw(Graphics2D g) {
+		draw(g, 0, 0);
+	}
+
+	/**
+	 * Draws the image of this child moved by (dx, dy) with Java2D.
+	 * @param g the Java2D graphics to draw onto
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 */
+	void draw(Graphics2D g, double dx, double dy) {
+		AffineTransform saved = g.getTransform();
+		if (isTranslation()) {
+			g.translate(x + dx, y + dy);
+		} else {
+			g.transform(new AffineTransform(mxx, myx, mxy, myy, x + dx, y + dy));
+		}
+		image.draw(g);
+		g.setTransform(saved);
+	}
+
+	/**
+	 * Writes the image of this child as SVG elements, inside a group with 
+	 * the transformation of this child.
+	 * @param out the SVG writer
+	 * @throws IOException if writing fails
+	 */
+	void svg(SvgWriter out) throws IOException {
+		svg(out, 0, 0);
+	}
+
+	/**
+	 * Writes the image of this child moved by (dx, dy) as SVG elements.
+	 * @param out the SVG writer
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 * @throws IOException if writing fails
+	 */
+	void svg(SvgWriter out, double dx, double dy) throws IOException {
+		double x = this.x + dx, y = this.y + dy;
+		if (!isTranslation()) {
+			out.append("<g transform=\"matrix(")
+					.append(SvgWriter.coefficient(mxx)).append(" ").append(SvgWriter.coefficient(myx)).append(" ")
+					.append(SvgWriter.coefficient(mxy)).append(" ").append(SvgWriter.coefficient(myy)).append(" ")
+					.append(x).append(" ").append(y).append(")\">\n");
+		} else if (x != 0 || y != 0) {
+			out.append("<g transform=\"translate(").append(x).append(" ").append(y).append(")\">\n");
+		} else {
+			image.svg(out);
+			return;
+		}
+		image.svg(out);
+		out.append("</g>\n");
+	}
+
+	/**
+	 * Computes the cached values needed for drawing this child with Java2D.
+	 * @see Image#prepare()
+	 */
+	void prepare() {
+		bounds();
+		updateMatrix();
+		image.prepare();
+	}
+
+	/**
+	 * Sets the transformation of the given JavaFX node to the transformation 
+	 * of this child, moved by (dx, dy).
+	 * @param jfxNode the JavaFX node that represents the image of this child
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 */
+	void place(javafx.scene.Node jfxNode, double dx, double dy) {
 
 //		System.out.println("<Node render>");
 //		System.out.println("  " + jfxNode + 
@@ -91,18 +372,23 @@ public class Child {
 //			jfxNode.setLayoutY(image.height / 2.0);
 //		}
 
-		Transform tr = Transform.rotate(-angle, 0, 0);
-		Transform tt = Transform.translate(x, y);
-		Transform ts = Transform.scale(xScale, yScale);
-		jfxNode.getTransforms().setAll(tt, tr, ts);
+		if (isTranslation()) {
+			jfxNode.setTranslateX(x + dx);
+			jfxNode.setTranslateY(y + dy);
+			if (!jfxNode.getTransforms().isEmpty()) {
+				jfxNode.getTransforms().clear();
+			}
+		} else {
+			jfxNode.setTranslateX(0);
+			jfxNode.setTranslateY(0);
+			jfxNode.getTransforms().setAll(new Affine(mxx, mxy, x + dx, myx, myy, y + dy));
+		}
 		
 //		System.out.println("  layoutBounds: " + jfxNode.getLayoutBounds());
 //		System.out.println("  boundsInLocal: " + jfxNode.getBoundsInLocal());
 //		System.out.println("  boundsInParent: " + jfxNode.getBoundsInParent());
 //		System.out.printf("  translateXY: %f, %f\n", jfxNode.getTranslateX(), jfxNode.getTranslateY());
 //		System.out.println("</Node render>");
-		
-		return jfxNode;
 	}
 
 	protected String toString(String indent) {
@@ -33,4 +33,23 @@ class Circle extends Shape {
 		return render(new javafx.scene.shape.Circle(r, r, r));
 	}
 
+	@Override
+	protected void path(Path p) {
+		double r = width / 2.0;
+		p.moveTo(width, r);
+		p.arc(r, r, r, r, 0, 360);
+		p.closePath();
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		double r = width / 2.0;
+		e.addEllipse(r, r, r, r, strokePadding());
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image);
+	}
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.paint.Color;
+
+/**
+ * Interns the colors for color strings, so that a string like "red" is only 
+ * parsed once. Preloaded with the named colors of JavaFX. For each string 
+ * the color with the most recently requested opacity is kept as well.
+ * @author michaelrohs
+ */
+class ColorCache {
+	/**
+	 * Maximum number of cached strings. Keeps generated strings like 
+	 * "#12ab34" from filling the memory.
+	 */
+	private static final int MAX_SIZE = 4096;
+
+	/**
+	 * A color and its variant with the most recently requested opacity.
+	 */
+	private static class Entry {
+		final Color color;
+		volatile Variant variant; // replaced as a whole
+
+		Entry(Color color) {
+			this.color = color;
+			this.variant = new Variant(1, color);
+		}
+	}
+
+	/**
+	 * A color for a requested opacity.
+	 */
+	private static class Variant {
+		final double opacity;
+		final Color color;
+
+		Variant(double opacity, Color color) {
+			this.opacity = opacity;
+			this.color = color;
+		}
+	}
+
+	private static final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>(256);
+
+	static {
+		for (Field f : Color.class.getFields()) {
+			if (f.getType() == Color.class && Modifier.isStatic(f.getModifiers())) {
+				try {
+					Color c = (Color) f.get(null);
+					cache.put(f.getName().toLowerCase(), new Entry(c));
+				} catch (IllegalAccessException ex) {
+					// only public fields are considered
+				}
+			}
+		}
+	}
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private ColorCache() {}
+
+	/**
+	 * Returns the color for the string, as {@link Color#web(String)} does.
+	 * @param name the color string
+	 * @return the color
+	 * @throws IllegalArgumentException if the string is not a color
+	 */
+	static Color get(String name) {
+		return entry(name).color;
+	}
+
+	/**
+	 * Returns the color for the string with its opacity multiplied by the 
+	 * given opacity, as {@link Color#web(String, double)} does.
+	 * @param name the color string
+	 * @param opacity the opacity, 0.0 to 1.0
+	 * @return the color
+	 * @throws IllegalArgumentException if the string is not a color or the 
+	 * opacity is out of range
+	 */
+	static Color get(String name, double opacity) {
+		Entry e = entry(name);
+		Variant v = e.variant;
+		if (v.opacity != opacity) {
+			v = new Variant(opacity, Color.web(name, opacity));
+			e.variant = v;
+		}
+		return v.color;
+	}
+
+	private static Entry entry(String name) {
+		Entry e = cache.get(name);
+		if (e == null) {
+			e = new Entry(Color.web(name));
+			if (cache.size() < MAX_SIZE) {
+				cache.putIfAbsent(name, e);
+			}
+		}
+		return e;
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.util.stream.IntStream;
+
+/**
+ * Reduces long polylines to the points that are visible at a given width 
+ * in pixels. The points are distributed over one bucket per pixel column. 
+ * Of each bucket only the first, the last, the lowest, and the highest point 
+ * are kept, in their original order (min/max bucketing). This preserves the 
+ * drawn shape of the line, including single spikes, and takes linear time.
+ * @author michaelrohs
+ */
+class Decimator {
+	/**
+	 * Minimum number of points for processing the buckets in parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Maximum number of points kept per bucket.
+	 */
+	private static final int POINTS_PER_BUCKET = 4;
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private Decimator() {}
+
+	/**
+	 * Returns the points that are visible at the given width. If the 
+	 * x-coordinates are nondecreasing, as for data series, each bucket 
+	 * covers an equal part of the x-range. Otherwise each bucket covers an 
+	 * equal number of consecutive points. Returns the points unchanged if 
+	 * there are not more points than are kept.
+	 * @param ps points as alternating x and y coordinates
+	 * @param width the width in pixels, the number of buckets
+	 * @return the reduced points
+	 */
+	static double[] decimate(double[] ps, int width) {
+		int n = ps.length / 2;
+		if (width <= 0 || (ps.length & 1) == 1 || n <= POINTS_PER_BUCKET * width) {
+			return ps;
+		}
+		int[] starts = starts(ps, n, width);
+		double[] buckets = new double[2 * POINTS_PER_BUCKET * width];
+		int[] counts = new int[width];
+		IntStream range = IntStream.range(0, width);
+		if (n >= PARALLEL_THRESHOLD) {
+			range = range.parallel();
+		}
+		range.forEach(b -> counts[b] = 
+				bucket(ps, starts[b], starts[b + 1], buckets, 2 * POINTS_PER_BUCKET * b));
+		int m = 0;
+		for (int c : counts) {
+			m += c;
+		}
+		double[] result = new double[2 * m];
+		int j = 0;
+		for (int b = 0; b < width; b++) {
+			System.arraycopy(buckets, 2 * POINTS_PER_BUCKET * b, result, j, 2 * counts[b]);
+			j += 2 * counts[b];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the first point of each bucket, followed by the 
+	 * number of points.
+	 * @param ps points as alternating x and y coordinates
+	 * @param n the number of points
+	 * @param width the number of buckets
+	 * @return the start indices, width + 1 elements
+	 */
+	private static int[] starts(double[] ps, int n, int width) {
+		int[] starts = new int[width + 1];
+		starts[width] = n;
+		double x0 = ps[0];
+		double dx = (ps[2 * (n - 1)] - x0) / width;
+		if (dx > 0 && isSortedByX(ps)) {
+			for (int b = 1; b < width; b++) {
+				starts[b] = lowerBound(ps, n, x0 + b * dx);
+			}
+		} else {
+			for (int b = 1; b < width; b++) {
+				starts[b] = (int) ((long) b * n / width);
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * Returns true if the x-coordinates are nondecreasing.
+	 * @param ps points as alternating x and y coordinates
+	 * @return true if sorted by x
+	 */
+	private static boolean isSortedByX(double[] ps) {
+		for (int i = 2; i < ps.length; i += 2) {
+			if (!(ps[i - 2] <= ps[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first point with an x-coordinate of at least x.
+	 * @param ps points sorted by x
+	 * @param n the number of points
+	 * @param x the x-coordinate
+	 * @return the index, n if there is none
+	 */
+	private static int lowerBound(double[] ps, int n, double x) {
+		int lo = 0;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ps[2 * mid] < x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Writes the first, lowest, highest, and last point of a bucket in their 
+	 * original order. Points that coincide are written once.
+	 * @param ps points as alternating x and y coordinates
+	 * @param from index of the first point of the bucket
+	 * @param to index after the last point of the bucket
+	 * @param out the output coordinates
+	 * @param offset the position in the output
+	 * @return the number of points written
+	 */
+	private static int bucket(double[] ps, int from, int to, double[] out, int offset) {
+		if (from >= to) {
+			return 0;
+		}
+		int min = from;
+		int max = from;
+		for (int i = from + 1; i < to; i++) {
+			double y = ps[2 * i + 1];
+			if (y < ps[2 * min + 1]) {
+				min = i;
+			} else if (y > ps[2 * max + 1]) {
+				max = i;
+			}
+		}
+		int[] indices = {from, Math.min(min, max), Math.max(min, max), to - 1};
+		int count = 0;
+		int previous = -1;
+		for (int i : indices) {
+			if (i != previous) {
+				out[offset++] = ps[2 * i];
+				out[offset++] = ps[2 * i + 1];
+				previous = i;
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -34,4 +34,25 @@ class Ellipse extends Shape {
 		return render(new javafx.scene.shape.Ellipse(w2, h2, w2, h2));
 	}
 
+	@Override
+	protected void path(Path p) {
+		double w2 = width / 2.0;
+		double h2 = height / 2.0;
+		p.moveTo(width, h2);
+		p.arc(w2, h2, w2, h2, 0, 360);
+		p.closePath();
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		double w2 = width / 2.0;
+		double h2 = height / 2.0;
+		e.addEllipse(w2, h2, w2, h2, strokePadding());
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image);
+	}
+
 }
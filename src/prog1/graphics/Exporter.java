@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saves many images as png files. The images are drawn one after the other 
+ * on the calling thread and handed over to a pool of encoder threads through 
+ * a bounded queue. If the encoders fall behind, drawing waits until there is 
+ * space in the queue, so only a few drawn images are held in memory at once.
+ * @author michaelrohs
+ */
+class Exporter {
+
+	/**
+	 * A drawn image to be encoded into a file.
+	 */
+	private static class Job {
+		final RenderedImage pixels;
+		final File file;
+
+		Job(RenderedImage pixels, File file) {
+			this.pixels = pixels;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Tells an encoder thread that there are no more jobs.
+	 */
+	private static final Job END = new Job(null, null);
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private Exporter() {}
+
+	/**
+	 * Saves the images as png files.
+	 * @param images maps file names to images
+	 * @param renderer the way the images are drawn
+	 * @return true if all images were successfully saved, false otherwise
+	 */
+	static boolean saveAll(Map<String, Image> images, Renderer renderer) {
+		int n = Math.max(1, Math.min(images.size(), Runtime.getRuntime().availableProcessors()));
+		BlockingQueue<Job> queue = new ArrayBlockingQueue<>(2 * n);
+		AtomicBoolean success = new AtomicBoolean(true);
+		Thread[] encoders = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			encoders[i] = new Thread(() -> encode(queue, success), "png encoder " + i);
+			encoders[i].setDaemon(true);
+			encoders[i].start();
+		}
+		try {
+			for (Map.Entry<String, Image> e : images.entrySet()) {
+				RenderedImage pixels;
+				try {
+					pixels = e.getValue().pixels(renderer);
+				} catch (RuntimeException ex) { // skip the image, save the others
+					System.err.println("Graphics.saveAll: " + e.getKey() + "\n" + ex);
+					success.set(false);
+					continue;
+				}
+				queue.put(new Job(pixels, new File(e.getKey())));
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			success.set(false);
+		} finally {
+			boolean interrupted = false;
+			for (int i = 0; i < n; i++) {
+				while (true) {
+					try {
+						queue.put(END);
+						break;
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+			}
+			for (Thread t : encoders) {
+				while (true) {
+					try {
+						t.join();
+						break;
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return success.get();
+	}
+
+	/**
+	 * Encodes jobs from the queue until the end marker is taken.
+	 * @param queue the queue of drawn images
+	 * @param success set to false if a file could not be written
+	 */
+	private static void encode(BlockingQueue<Job> queue, AtomicBoolean success) {
+		while (true) {
+			Job job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException ex) {
+				success.set(false);
+				return;
+			}
+			if (job == END) {
+				return;
+			}
+			try {
+				if (!Image.write(job.pixels, job.file)) {
+					success.set(false);
+				}
+			} catch (RuntimeException ex) { // keep taking jobs, so that drawing does not block
+				System.err.println("Graphics.saveAll:\n" + ex);
+				success.set(false);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import javafx.scene.transform.Transform;
+
+/**
+ * Accumulates the axis-aligned extent of points, disks, and ellipses
+ * under an affine transformation. Used for computing bounding boxes
+ * without rendering.
+ * @author michaelrohs
+ */
+class Extent {
+	private final Matrix m;
+	// extent of a transformed unit disk in x- and y-direction
+	private double xNorm, yNorm;
+
+	private double x1 = Double.POSITIVE_INFINITY;
+	private double y1 = Double.POSITIVE_INFINITY;
+	private double x2 = Double.NEGATIVE_INFINITY;
+	private double y2 = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Create an empty extent without transformation.
+	 */
+	Extent() {
+		m = new Matrix();
+		updateNorms();
+	}
+
+	/**
+	 * Create an empty extent.
+	 * @param t the transformation to apply to all added elements
+	 */
+	Extent(Transform t) {
+		m = new Matrix(t);
+		updateNorms();
+	}
+
+	/**
+	 * Create an empty extent.
+	 * @param m the transformation to apply to all added elements, not copied
+	 */
+	Extent(Matrix m) {
+		this.m = m;
+		updateNorms();
+	}
+
+	private void updateNorms() {
+		xNorm = Math.sqrt(m.mxx * m.mxx + m.mxy * m.mxy);
+		yNorm = Math.sqrt(m.myx * m.myx + m.myy * m.myy);
+	}
+
+	/**
+	 * Returns the transformation applied to added elements. Must not be 
+	 * modified directly, use {@link #concatenate} and {@link #setMatrix}.
+	 * @return the matrix
+	 */
+	Matrix matrix() {
+		return m;
+	}
+
+	/**
+	 * Appends a transformation for the elements added next, e.g., the 
+	 * transformation of a child. Restore the previous one with 
+	 * {@link #setMatrix}.
+	 */
+	void concatenate(double mxx, double mxy, double tx, double myx, double myy, double ty) {
+		m.concatenate(mxx, mxy, tx, myx, myy, ty);
+		updateNorms();
+	}
+
+	/**
+	 * Sets the transformation for the elements added next.
+	 */
+	void setMatrix(double mxx, double mxy, double tx, double myx, double myy, double ty) {
+		m.set(mxx, mxy, tx, myx, myy, ty);
+		updateNorms();
+	}
+
+	/**
+	 * Add a point.
+	 * @param x x-coordinate (untransformed)
+	 * @param y y-coordinate (untransformed)
+	 */
+	void add(double x, double y) {
+		double px = m.mxx * x + m.mxy * y + m.tx;
+		double py = m.myx * x + m.myy * y + m.ty;
+		if (px < x1) x1 = px;
+		if (px > x2) x2 = px;
+		if (py < y1) y1 = py;
+		if (py > y2) y2 = py;
+	}
+
+	/**
+	 * Add points.
+	 * @param ps points as alternating x and y coordinates (untransformed)
+	 */
+	void addPoints(double[] ps) {
+		for (int i = 0; i < ps.length; i += 2) {
+			add(ps[i], ps[i + 1]);
+		}
+	}
+
+	/**
+	 * Add the corners of an axis-parallel box.
+	 * @param x1 minimum x-coordinate (untransformed)
+	 * @param y1 minimum y-coordinate (untransformed)
+	 * @param x2 maximum x-coordinate (untransformed)
+	 * @param y2 maximum y-coordinate (untransformed)
+	 */
+	void addBox(double x1, double y1, double x2, double y2) {
+		add(x1, y1);
+		add(x2, y1);
+		add(x2, y2);
+		add(x1, y2);
+	}
+
+	/**
+	 * Add an axis-parallel box that has already been transformed.
+	 * @param x1 minimum x-coordinate (transformed)
+	 * @param y1 minimum y-coordinate (transformed)
+	 * @param x2 maximum x-coordinate (transformed)
+	 * @param y2 maximum y-coordinate (transformed)
+	 */
+	void addTransformedBox(double x1, double y1, double x2, double y2) {
+		if (x1 < this.x1) this.x1 = x1;
+		if (x2 > this.x2) this.x2 = x2;
+		if (y1 < this.y1) this.y1 = y1;
+		if (y2 > this.y2) this.y2 = y2;
+	}
+
+	/**
+	 * Add a disk.
+	 * @param x x-coordinate of the center (untransformed)
+	 * @param y y-coordinate of the center (untransformed)
+	 * @param r radius (untransformed)
+	 */
+	void addDisk(double x, double y, double r) {
+		double px = m.mxx * x + m.mxy * y + m.tx;
+		double py = m.myx * x + m.myy * y + m.ty;
+		double dx = r * xNorm;
+		double dy = r * yNorm;
+		if (px - dx < x1) x1 = px - dx;
+		if (px + dx > x2) x2 = px + dx;
+		if (py - dy < y1) y1 = py - dy;
+		if (py + dy > y2) y2 = py + dy;
+	}
+
+	/**
+	 * Add an axis-parallel ellipse whose outline is widened by pad on each side.
+	 * @param cx x-coordinate of the center (untransformed)
+	 * @param cy y-coordinate of the center (untransformed)
+	 * @param rx radius in x-direction (untransformed)
+	 * @param ry radius in y-direction (untransformed)
+	 * @param pad widening of the outline, e.g., half the stroke width
+	 */
+	void addEllipse(double cx, double cy, double rx, double ry, double pad) {
+		double px = m.mxx * cx + m.mxy * cy + m.tx;
+		double py = m.myx * cx + m.myy * cy + m.ty;
+		// support function of the ellipse plus a disk of radius pad
+		double dx = Math.hypot(rx * m.mxx, ry * m.mxy) + pad * xNorm;
+		double dy = Math.hypot(rx * m.myx, ry * m.myy) + pad * yNorm;
+		if (px - dx < x1) x1 = px - dx;
+		if (px + dx > x2) x2 = px + dx;
+		if (py - dy < y1) y1 = py - dy;
+		if (py + dy > y2) y2 = py + dy;
+	}
+
+	/**
+	 * Add the tip of a mitered join at vertex (x, y). The incoming and
+	 * outgoing edge directions need not be normalized. Nothing is added if
+	 * the miter is longer than miterLimit times pad (the join is then
+	 * beveled and covered by the disk at the vertex).
+	 * @param x x-coordinate of the vertex (untransformed)
+	 * @param y y-coordinate of the vertex (untransformed)
+	 * @param dx1 x-direction of the incoming edge
+	 * @param dy1 y-direction of the incoming edge
+	 * @param dx2 x-direction of the outgoing edge
+	 * @param dy2 y-direction of the outgoing edge
+	 * @param pad half the stroke width
+	 * @param miterLimit the miter limit
+	 */
+	void addMiter(double x, double y, double dx1, double dy1, double dx2, double dy2,
+			double pad, double miterLimit)
+	{
+		double l1 = Math.hypot(dx1, dy1);
+		double l2 = Math.hypot(dx2, dy2);
+		if (l1 == 0 || l2 == 0 || pad <= 0) return;
+		dx1 /= l1; dy1 /= l1;
+		dx2 /= l2; dy2 /= l2;
+		// sin of half the angle between the edges
+		double sin = Math.sqrt(Math.max(0, (1 + dx1 * dx2 + dy1 * dy2) / 2));
+		if (sin * miterLimit < 1) return; // beveled
+		double bx = dx1 - dx2;
+		double by = dy1 - dy2;
+		double bl = Math.hypot(bx, by);
+		if (bl == 0) return; // straight continuation
+		double m = pad / sin / bl;
+		add(x + bx * m, y + by * m);
+	}
+
+	/**
+	 * Add the corners of an edge that is widened by pad on each side, i.e., 
+	 * the end points moved by pad in both directions along the normal of 
+	 * the edge. Ignores edges of length zero.
+	 * @param ax x-coordinate of the start point (untransformed)
+	 * @param ay y-coordinate of the start point (untransformed)
+	 * @param bx x-coordinate of the end point (untransformed)
+	 * @param by y-coordinate of the end point (untransformed)
+	 * @param pad widening of the edge, e.g., half the stroke width
+	 * @return true if the edge has a nonzero length
+	 */
+	boolean addWidenedEdge(double ax, double ay, double bx, double by, double pad) {
+		double l = Math.hypot(bx - ax, by - ay);
+		if (l == 0) return false;
+		double nx = (ay - by) * pad / l;
+		double ny = (bx - ax) * pad / l;
+		add(ax + nx, ay + ny);
+		add(ax - nx, ay - ny);
+		add(bx + nx, by + ny);
+		add(bx - nx, by - ny);
+		return true;
+	}
+
+	/**
+	 * Add the outer corners of a square line cap at the end point (x, y) of
+	 * an edge.
+	 * @param x x-coordinate of the end point (untransformed)
+	 * @param y y-coordinate of the end point (untransformed)
+	 * @param dx x-direction pointing away from the edge
+	 * @param dy y-direction pointing away from the edge
+	 * @param pad half the stroke width
+	 */
+	void addSquareCap(double x, double y, double dx, double dy, double pad) {
+		double l = Math.hypot(dx, dy);
+		if (l == 0 || pad <= 0) return;
+		dx *= pad / l;
+		dy *= pad / l;
+		add(x + dx - dy, y + dy + dx);
+		add(x + dx + dy, y + dy - dx);
+	}
+
+	double minX() {
+		return x1;
+	}
+
+	double minY() {
+		return y1;
+	}
+
+	double maxX() {
+		return x2;
+	}
+
+	double maxY() {
+		return y2;
+	}
+
+	/**
+	 * Returns the accumulated extent.
+	 * @return the bounding box
+	 */
+	Rect toRect() {
+		return new Rect(x1, y1, x2 - x1, y2 - y1);
+	}
+
+}
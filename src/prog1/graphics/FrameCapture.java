@@ -0,0 +1,655 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Captures the frames of an animation into a numbered sequence of png 
+ * files, an animated png file, or an animated gif file. Each added image is 
+ * rasterized off-screen with {@link Rasterizer} at a fixed size, with its 
+ * origin at the upper left corner. Frames are rasterized and compressed in 
+ * parallel by a pool of encoder threads and written in order. At most a 
+ * few frames are pending at once: if the encoders fall behind, 
+ * {@link #add(Image)} waits.
+ * <pre>
+ * {@code
+ * FrameCapture capture = FrameCapture.apng("animation.png", 400, 300, 30);
+ * for (int i = 0; i < 90; i++) {
+ *     capture.add(rotate(4 * i, square(100, "red")));
+ * }
+ * capture.close();
+ * }</pre>
+ * @author michaelrohs
+ */
+public class FrameCapture {
+	private final int width, height;
+	private final double frameRate;
+	private final Format format;
+	private final BlockingQueue<Job> queue;
+	private final Semaphore pending; // limits the frames added but not yet written
+	private final Thread[] encoders;
+	private final Map<Integer, Object> encoded = new HashMap<>(); // encoded frames waiting for their turn
+	private int nextToWrite; // index of the next frame to write, guarded by encoded
+	private int written; // number of successfully written frames, guarded by encoded
+	private int frameCount; // number of added frames
+	private volatile boolean success = true;
+	private boolean closed;
+
+	/**
+	 * An image to be encoded as the frame with the given index.
+	 */
+	private static class Job {
+		final Image image;
+		final int index;
+
+		Job(Image image, int index) {
+			this.image = image;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Tells an encoder thread that there are no more jobs.
+	 */
+	private static final Job END = new Job(null, -1);
+
+	/**
+	 * An output format. Encoding runs in parallel, writing runs in frame order.
+	 */
+	private interface Format {
+		Object encode(int index, int[] argb, int width, int height) throws IOException;
+		void write(int index, Object frame) throws IOException;
+		/**
+		 * Completes the output.
+		 * @param frameCount the number of successfully written frames
+		 */
+		void finish(int frameCount) throws IOException;
+	}
+
+	private FrameCapture(int width, int height, double frameRate, Format format) {
+		if (width <= 0 || height <= 0 || !(frameRate > 0)) {
+			throw new IllegalArgumentException("positive width, height, and frame rate required");
+		}
+		this.width = width;
+		this.height = height;
+		this.frameRate = frameRate;
+		this.format = format;
+		int n = Math.max(1, Runtime.getRuntime().availableProcessors());
+		queue = new ArrayBlockingQueue<>(2 * n);
+		pending = new Semaphore(4 * n);
+		encoders = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			encoders[i] = new Thread(this::encode, "frame encoder " + i);
+			encoders[i].setDaemon(true);
+			encoders[i].start();
+		}
+	}
+
+	/**
+	 * Captures the frames into numbered png files.
+	 * @param fileNamePattern the file names as a format string with the 
+	 * frame number as an argument, e.g., "frames/frame%04d.png"
+	 * @param width the width of the frames in pixels
+	 * @param height the height of the frames in pixels
+	 * @param frameRate the frames per second, only used for the animation 
+	 * time while capturing with {@link ApplicationBase}
+	 * @return the capture
+	 */
+	public static FrameCapture pngSequence(String fileNamePattern, int width, int height, double frameRate) {
+		return new FrameCapture(width, height, frameRate, new PngSequence(fileNamePattern));
+	}
+
+	/**
+	 * Captures the frames into an animated png file (APNG), which plays in 
+	 * a loop. Keeps full colors and transparency.
+	 * @param fileName the name of the file
+	 * @param width the width of the frames in pixels
+	 * @param height the height of the frames in pixels
+	 * @param frameRate the frames per second
+	 * @return the capture
+	 */
+	public static FrameCapture apng(String fileName, int width, int height, double frameRate) {
+		return new FrameCapture(width, height, frameRate, new Apng(fileName, width, height, frameRate));
+	}
+
+	/**
+	 * Captures the frames into an animated gif file, which plays in a loop. 
+	 * Each frame is reduced to 255 colors; semi-transparent pixels become 
+	 * opaque or transparent. Frame delays are multiples of 1/100 second, 
+	 * so the frame rate is met on average.
+	 * @param fileName the name of the file
+	 * @param width the width of the frames in pixels
+	 * @param height the height of the frames in pixels
+	 * @param frameRate the frames per second
+	 * @return the capture
+	 */
+	public static FrameCapture gif(String fileName, int width, int height, double frameRate) {
+		return new FrameCapture(width, height, frameRate, new Gif(fileName, frameRate));
+	}
+
+	/**
+	 * The frames per second of the animation.
+	 * @return the frame rate
+	 */
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * The number of frames added so far.
+	 * @return the frame count
+	 */
+	public synchronized int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Adds the image as the next frame. Waits if too many frames are pending.
+	 * @param image the image
+	 */
+	public void add(Image image) {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("capture has already been closed");
+			}
+		}
+		image.prepare();
+		try {
+			pending.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			success = false;
+			return;
+		}
+		int index;
+		synchronized (this) {
+			index = frameCount++;
+		}
+		try {
+			queue.put(new Job(image, index));
+		} catch (InterruptedException ex) { // skip the frame, so that later frames are still written
+			Thread.currentThread().interrupt();
+			success = false;
+			encoded(index, null);
+		}
+	}
+
+	/**
+	 * Waits until all frames are written and completes the file.
+	 * @return true if all frames were successfully written, false otherwise
+	 */
+	public boolean close() {
+		synchronized (this) {
+			if (closed) {
+				return success;
+			}
+			closed = true;
+		}
+		boolean interrupted = false;
+		for (int i = 0; i < encoders.length; i++) {
+			while (true) {
+				try {
+					queue.put(END);
+					break;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		for (Thread t : encoders) {
+			while (true) {
+				try {
+					t.join();
+					break;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			int frames;
+			synchronized (encoded) {
+				frames = written;
+			}
+			format.finish(frames);
+		} catch (IOException ex) {
+			System.err.println("FrameCapture.close:\n" + ex);
+			success = false;
+		}
+		return success;
+	}
+
+	/**
+	 * Encodes jobs from the queue until the end marker is taken. Writes the 
+	 * encoded frames that are next in order.
+	 */
+	private void encode() {
+		int[] argb = new int[width * height];
+		while (true) {
+			Job job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException ex) {
+				success = false;
+				return;
+			}
+			if (job == END) {
+				return;
+			}
+			Object frame = null;
+			try {
+				java.util.Arrays.fill(argb, 0);
+				Rasterizer.rasterize(job.image, argb, width, height);
+				frame = format.encode(job.index, argb, width, height);
+			} catch (IOException | RuntimeException ex) { // keep taking jobs, so that adding does not block
+				System.err.println("FrameCapture:\n" + ex);
+				success = false;
+			}
+			encoded(job.index, frame);
+		}
+	}
+
+	/**
+	 * Writes the encoded frame and the frames after it, as far as they are 
+	 * next in order.
+	 * @param index the index of the frame
+	 * @param frame the encoded frame, null to skip the frame
+	 */
+	private void encoded(int index, Object frame) {
+		synchronized (encoded) {
+			encoded.put(index, frame);
+			while (encoded.containsKey(nextToWrite)) {
+				Object f = encoded.remove(nextToWrite);
+				try {
+					if (f != null) {
+						format.write(nextToWrite, f);
+						written++;
+					}
+				} catch (IOException | RuntimeException ex) {
+					System.err.println("FrameCapture:\n" + ex);
+					success = false;
+				}
+				nextToWrite++;
+				pending.release();
+			}
+		}
+	}
+
+	/**
+	 * Numbered png files. Each frame is written by its encoder thread.
+	 */
+	private static class PngSequence implements Format {
+		private final String pattern;
+
+		PngSequence(String pattern) {
+			this.pattern = pattern;
+		}
+
+		@Override
+		public Object encode(int index, int[] argb, int width, int height) throws IOException {
+			File file = new File(String.format(pattern, index));
+			if (!Image.write(Rasterizer.wrap(argb, width, height), file)) {
+				throw new IOException("cannot write " + file);
+			}
+			return Boolean.TRUE;
+		}
+
+		@Override
+		public void write(int index, Object frame) {
+		}
+
+		@Override
+		public void finish(int frameCount) {
+		}
+	}
+
+	/**
+	 * An animated png file. Frames are filtered and compressed in parallel; 
+	 * the number of frames in the animation control chunk is filled in at 
+	 * the end.
+	 */
+	private static class Apng implements Format {
+		private final String fileName;
+		private final int width, height;
+		private final int delayNum, delayDen;
+		private DataOutputStream out;
+		private long actlOffset; // file position of the animation control chunk
+		private long position; // bytes written
+		private int sequence; // sequence number of fcTL and fdAT chunks
+		private int frames; // number of written frames, the first one is the default image
+
+		Apng(String fileName, int width, int height, double frameRate) {
+			this.fileName = fileName;
+			this.width = width;
+			this.height = height;
+			// delay = delayNum / delayDen seconds, both are unsigned 16-bit
+			delayNum = 100;
+			delayDen = (int) Math.min(65535, Math.max(1, Math.round(100 * frameRate)));
+		}
+
+		@Override
+		public Object encode(int index, int[] argb, int width, int height) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			Deflater deflater = new Deflater();
+			try (DeflaterOutputStream z = new DeflaterOutputStream(bytes, deflater, 1 << 16)) {
+				int stride = 4 * width;
+				byte[] previous = new byte[stride];
+				byte[] row = new byte[stride];
+				byte[] filtered = new byte[stride];
+				byte[] best = new byte[stride];
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						int p = argb[y * width + x];
+						row[4 * x] = (byte) (p >> 16);
+						row[4 * x + 1] = (byte) (p >> 8);
+						row[4 * x + 2] = (byte) p;
+						row[4 * x + 3] = (byte) (p >>> 24);
+					}
+					int bestType = filter(row, previous, best);
+					z.write(bestType);
+					z.write(best);
+					byte[] t = previous;
+					previous = row;
+					row = t;
+				}
+			} finally {
+				deflater.end();
+			}
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * Filters the row with the filter type that gives the smallest sum 
+		 * of absolute values, the usual heuristic for good compression.
+		 * @return the filter type
+		 */
+		private static int filter(byte[] row, byte[] previous, byte[] best) {
+			int bestType = 0;
+			long bestSum = Long.MAX_VALUE;
+			byte[] f = new byte[row.length];
+			for (int type : new int[] {0, 1, 2, 4}) {
+				long sum = 0;
+				for (int i = 0; i < row.length; i++) {
+					int a = i >= 4 ? row[i - 4] & 0xff : 0;
+					int b = previous[i] & 0xff;
+					int c = i >= 4 ? previous[i - 4] & 0xff : 0;
+					int x = row[i] & 0xff;
+					int v;
+					switch (type) {
+						case 1: v = x - a; break;
+						case 2: v = x - b; break;
+						case 4: v = x - paeth(a, b, c); break;
+						default: v = x;
+					}
+					f[i] = (byte) v;
+					sum += Math.abs((byte) v);
+				}
+				if (sum < bestSum) {
+					bestSum = sum;
+					bestType = type;
+					System.arraycopy(f, 0, best, 0, f.length);
+				}
+			}
+			return bestType;
+		}
+
+		private static int paeth(int a, int b, int c) {
+			int p = a + b - c;
+			int pa = Math.abs(p - a);
+			int pb = Math.abs(p - b);
+			int pc = Math.abs(p - c);
+			return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+		}
+
+		@Override
+		public void write(int index, Object frame) throws IOException {
+			if (out == null) {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+				out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+				position = 8;
+				ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+				DataOutputStream d = new DataOutputStream(ihdr);
+				d.writeInt(width);
+				d.writeInt(height);
+				d.write(new byte[] {8, 6, 0, 0, 0}); // 8 bits, RGBA, deflate, no interlace
+				chunk("IHDR", ihdr.toByteArray());
+				actlOffset = position;
+				chunk("acTL", new byte[8]); // frame count filled in by finish, loop forever
+			}
+			ByteArrayOutputStream fctl = new ByteArrayOutputStream();
+			DataOutputStream d = new DataOutputStream(fctl);
+			d.writeInt(sequence++);
+			d.writeInt(width);
+			d.writeInt(height);
+			d.writeInt(0);
+			d.writeInt(0);
+			d.writeShort(delayNum);
+			d.writeShort(delayDen);
+			d.writeByte(0); // dispose: none
+			d.writeByte(0); // blend: source
+			chunk("fcTL", fctl.toByteArray());
+			byte[] data = (byte[]) frame;
+			if (frames++ == 0) {
+				chunk("IDAT", data);
+			} else {
+				byte[] fdat = new byte[4 + data.length];
+				fdat[0] = (byte) (sequence >>> 24);
+				fdat[1] = (byte) (sequence >>> 16);
+				fdat[2] = (byte) (sequence >>> 8);
+				fdat[3] = (byte) sequence;
+				sequence++;
+				System.arraycopy(data, 0, fdat, 4, data.length);
+				chunk("fdAT", fdat);
+			}
+		}
+
+		private void chunk(String type, byte[] data) throws IOException {
+			byte[] t = type.getBytes("US-ASCII");
+			CRC32 crc = new CRC32();
+			crc.update(t);
+			crc.update(data);
+			out.writeInt(data.length);
+			out.write(t);
+			out.write(data);
+			out.writeInt((int) crc.getValue());
+			position += 12 + data.length;
+		}
+
+		@Override
+		public void finish(int frameCount) throws IOException {
+			if (out == null) {
+				return;
+			}
+			chunk("IEND", new byte[0]);
+			out.close();
+			byte[] actl = {(byte) (frameCount >>> 24), (byte) (frameCount >>> 16), 
+					(byte) (frameCount >>> 8), (byte) frameCount, 0, 0, 0, 0};
+			CRC32 crc = new CRC32();
+			crc.update("acTL".getBytes("US-ASCII"));
+			crc.update(actl);
+			try (RandomAccessFile f = new RandomAccessFile(fileName, "rw")) {
+				f.seek(actlOffset + 8);
+				f.write(actl);
+				f.writeInt((int) crc.getValue());
+			}
+		}
+	}
+
+	/**
+	 * An animated gif file. Frames are reduced to a palette in parallel and 
+	 * compressed by the gif writer of ImageIO in frame order.
+	 */
+	private static class Gif implements Format {
+		private static final int TRANSPARENT = 255; // palette index of transparent pixels
+		private final String fileName;
+		private final double frameRate;
+		private ImageWriter writer;
+		private ImageOutputStream out;
+
+		Gif(String fileName, double frameRate) {
+			this.fileName = fileName;
+			this.frameRate = frameRate;
+		}
+
+		/**
+		 * Reduces the frame to the 255 most frequent colors, at 5 bits per 
+		 * channel, and maps each pixel to the closest of them.
+		 */
+		@Override
+		public Object encode(int index, int[] argb, int width, int height) {
+			int[] counts = new int[1 << 15];
+			long[] sums = new long[3 << 15];
+			for (int p : argb) {
+				if ((p >>> 24) >= 128) {
+					int k = key(p);
+					counts[k]++;
+					sums[3 * k] += (p >> 16) & 0xff;
+					sums[3 * k + 1] += (p >> 8) & 0xff;
+					sums[3 * k + 2] += p & 0xff;
+				}
+			}
+			Integer[] keys = new Integer[counts.length];
+			int n = 0;
+			for (int k = 0; k < counts.length; k++) {
+				if (counts[k] > 0) {
+					keys[n++] = k;
+				}
+			}
+			java.util.Arrays.sort(keys, 0, n, (a, b) -> Integer.compare(counts[b], counts[a]));
+			int size = Math.min(n, TRANSPARENT);
+			byte[] r = new byte[256], g = new byte[256], b = new byte[256];
+			for (int i = 0; i < size; i++) {
+				int k = keys[i];
+				r[i] = (byte) (sums[3 * k] / counts[k]);
+				g[i] = (byte) (sums[3 * k + 1] / counts[k]);
+				b[i] = (byte) (sums[3 * k + 2] / counts[k]);
+			}
+			IndexColorModel cm = new IndexColorModel(8, 256, r, g, b, TRANSPARENT);
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, cm);
+			byte[] pixels = ((java.awt.image.DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			short[] nearest = new short[1 << 15];
+			java.util.Arrays.fill(nearest, (short) -1);
+			for (int i = 0; i < argb.length; i++) {
+				int p = argb[i];
+				if ((p >>> 24) < 128) {
+					pixels[i] = (byte) TRANSPARENT;
+					continue;
+				}
+				int k = key(p);
+				if (nearest[k] < 0) {
+					nearest[k] = (short) closest(k, r, g, b, size);
+				}
+				pixels[i] = (byte) nearest[k];
+			}
+			return image;
+		}
+
+		private static int key(int p) {
+			return ((p >> 9) & 0x7c00) | ((p >> 6) & 0x3e0) | ((p >> 3) & 0x1f);
+		}
+
+		private static int closest(int k, byte[] r, byte[] g, byte[] b, int size) {
+			int kr = ((k >> 10) << 3) + 4, kg = (((k >> 5) & 0x1f) << 3) + 4, kb = ((k & 0x1f) << 3) + 4;
+			int best = 0;
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < size; i++) {
+				int dr = (r[i] & 0xff) - kr, dg = (g[i] & 0xff) - kg, db = (b[i] & 0xff) - kb;
+				int d = dr * dr + dg * dg + db * db;
+				if (d < bestDistance) {
+					bestDistance = d;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		@Override
+		public void write(int index, Object frame) throws IOException {
+			boolean first = writer == null; // the first written frame, not necessarily index 0
+			if (first) {
+				writer = ImageIO.getImageWritersByFormatName("gif").next();
+				new File(fileName).delete();
+				out = ImageIO.createImageOutputStream(new File(fileName));
+				writer.setOutput(out);
+				writer.prepareWriteSequence(null);
+			}
+			BufferedImage image = (BufferedImage) frame;
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			IIOMetadata metadata = writer.getDefaultImageMetadata(
+					ImageTypeSpecifier.createFromRenderedImage(image), param);
+			String formatName = metadata.getNativeMetadataFormatName();
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+			// delays in 1/100 s, rounded such that the frame rate is met on average
+			long delay = Math.round((index + 1) * 100 / frameRate) - Math.round(index * 100 / frameRate);
+			IIOMetadataNode gce = new IIOMetadataNode("GraphicControlExtension");
+			gce.setAttribute("disposalMethod", "restoreToBackgroundColor");
+			gce.setAttribute("userInputFlag", "FALSE");
+			gce.setAttribute("transparentColorFlag", "TRUE");
+			gce.setAttribute("delayTime", Long.toString(delay));
+			gce.setAttribute("transparentColorIndex", Integer.toString(TRANSPARENT));
+			root.appendChild(gce);
+			if (first) {
+				IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+				IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+				loop.setAttribute("applicationID", "NETSCAPE");
+				loop.setAttribute("authenticationCode", "2.0");
+				loop.setUserObject(new byte[] {1, 0, 0}); // loop forever
+				extensions.appendChild(loop);
+				root.appendChild(extensions);
+			}
+			metadata.setFromTree(formatName, root);
+			writer.writeToSequence(new IIOImage(image, null, metadata), param);
+		}
+
+		@Override
+		public void finish(int frameCount) throws IOException {
+			if (writer != null) {
+				writer.endWriteSequence();
+				out.close();
+				writer.dispose();
+			}
+		}
+	}
+
+}
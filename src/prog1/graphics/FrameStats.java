@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and counters for the frames drawn by {@link ApplicationBase}. 
+ * When enabled, the phases of each frame are timed separately and 
+ * collected in latency histograms, and the created JavaFX nodes and the 
+ * computed bounding boxes are counted. Off by default.
+ * <pre>
+ * {@code
+ * FrameStats.setEnabled(true);
+ * ...
+ * Base.println(FrameStats.summary());
+ * }</pre>
+ * @author michaelrohs
+ */
+public class FrameStats {
+
+	/**
+	 * The timed phases of a frame.
+	 */
+	public enum Phase {
+		/** The tick function. */
+		TICK, 
+		/** The drawing function, i.e., composing the image. */
+		DRAW, 
+		/** Rendering the image into JavaFX nodes, a canvas, or pixels. */
+		RENDER, 
+		/** Attaching the rendered nodes or pixels to the scene. */
+		ATTACH, 
+		/** A whole frame of the animation timer, from tick to attach. */
+		FRAME
+	}
+
+	private static volatile boolean enabled;
+	private static final Histogram[] histograms = new Histogram[Phase.values().length];
+	private static final LongAdder nodes = new LongAdder();
+	private static final LongAdder boundingBoxes = new LongAdder();
+
+	static {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private FrameStats() {}
+
+	/**
+	 * Switches collecting on or off.
+	 * @param enabled true to collect timings and counters
+	 */
+	public static void setEnabled(boolean enabled) {
+		FrameStats.enabled = enabled;
+	}
+
+	/**
+	 * Checks whether timings and counters are collected.
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Clears all timings and counters.
+	 */
+	public static void reset() {
+		for (Histogram h : histograms) {
+			h.reset();
+		}
+		nodes.reset();
+		boundingBoxes.reset();
+	}
+
+	/**
+	 * The number of timed occurrences of the phase.
+	 * @param phase the phase
+	 * @return the count
+	 */
+	public static long count(Phase phase) {
+		return histograms[phase.ordinal()].count();
+	}
+
+	/**
+	 * The mean duration of the phase.
+	 * @param phase the phase
+	 * @return the mean in milliseconds, 0 if not timed yet
+	 */
+	public static double mean(Phase phase) {
+		return histograms[phase.ordinal()].mean() * 1e-6;
+	}
+
+	/**
+	 * The longest duration of the phase.
+	 * @param phase the phase
+	 * @return the maximum in milliseconds, 0 if not timed yet
+	 */
+	public static double max(Phase phase) {
+		return histograms[phase.ordinal()].max() * 1e-6;
+	}
+
+	/**
+	 * The duration of the phase that the given percentage of occurrences 
+	 * does not exceed, with a relative error of at most 1/32.
+	 * @param phase the phase
+	 * @param percentile the percentile, 0 to 100, e.g., 99 for the 99th percentile
+	 * @return the duration in milliseconds, 0 if not timed yet
+	 */
+	public static double percentile(Phase phase, double percentile) {
+		return histograms[phase.ordinal()].percentile(percentile) * 1e-6;
+	}
+
+	/**
+	 * The number of JavaFX nodes created for images.
+	 * @return the count
+	 */
+	public static long nodeCount() {
+		return nodes.sum();
+	}
+
+	/**
+	 * The number of bounding boxes computed for the children of groups.
+	 * @return the count
+	 */
+	public static long boundingBoxCount() {
+		return boundingBoxes.sum();
+	}
+
+	/**
+	 * Returns the mean, 99th percentile, and maximum of each phase and the 
+	 * counters, one line per phase.
+	 * @return the summary
+	 */
+	public static String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (Phase p : Phase.values()) {
+			sb.append(String.format("%-6s n = %d, mean = %.2f ms, p99 = %.2f ms, max = %.2f ms%n", 
+					p.name().toLowerCase(), count(p), mean(p), percentile(p, 99), max(p)));
+		}
+		sb.append("nodes = ").append(nodeCount())
+				.append(", bounding boxes = ").append(boundingBoxCount());
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the start time for timing a phase.
+	 * @return the current time in nanoseconds, 0 if not enabled
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the duration of a phase.
+	 * @param phase the phase
+	 * @param start the start time returned by {@link #start()}
+	 */
+	static void stop(Phase phase, long start) {
+		if (start != 0) {
+			histograms[phase.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Counts a created JavaFX node.
+	 */
+	static void countNode() {
+		if (enabled) {
+			nodes.increment();
+		}
+	}
+
+	/**
+	 * Counts a computed bounding box.
+	 */
+	static void countBoundingBox() {
+		if (enabled) {
+			boundingBoxes.increment();
+		}
+	}
+
+	/**
+	 * A latency histogram in the style of HdrHistogram. Values below 32 have 
+	 * their own bucket. Each larger power of two is split into 32 buckets of 
+	 * equal width, so the relative error is at most 1/32 over the whole 
+	 * range of long values.
+	 */
+	private static class Histogram {
+		private static final int SUB_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+		private long count, sum, max;
+
+		synchronized void record(long value) {
+			value = Math.max(0, value);
+			counts[index(value)]++;
+			count++;
+			sum += value;
+			max = Math.max(max, value);
+		}
+
+		synchronized void reset() {
+			java.util.Arrays.fill(counts, 0);
+			count = 0;
+			sum = 0;
+			max = 0;
+		}
+
+		synchronized long count() {
+			return count;
+		}
+
+		synchronized double mean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		synchronized long max() {
+			return max;
+		}
+
+		synchronized long percentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(max, highest(i));
+				}
+			}
+			return max;
+		}
+
+		private static int index(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value); // at least SUB_BITS
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		/**
+		 * The highest value of the bucket.
+		 */
+		private static long highest(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = index % SUB_BUCKETS;
+			long width = 1L << (exponent - SUB_BITS);
+			return (1L << exponent) + (sub + 1) * width - 1;
+		}
+	}
+
+}
@@ -16,6 +16,8 @@
 
 package prog1.graphics;
 
+import java.util.Map;
+import java.util.function.Consumer;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.shape.StrokeLineJoin;
@@ -51,7 +53,7 @@ public class Graphics {
 	public static Color color(String name) {
 		// http://grepcode.com/file_/repo1.maven.org/maven2/net.java.openjfx.backport/openjfx-78-backport/1.8.0-ea-b96.1/javafx/scene/paint/Color.java/?v=source
 		try {
-			return Color.web(name);
+			return ColorCache.get(name);
 		} catch (IllegalArgumentException ex) {
 			Base.println("Error: The color \"" + name + "\" is unknown. List of colors: http://docs.oracle.com/javase/8/javafx/api/javafx/scene/paint/Color.html");
 			System.exit(0);
@@ -70,7 +72,7 @@ public class Graphics {
 	public static Color color(String name, double opacity) {
 		// http://grepcode.com/file_/repo1.maven.org/maven2/net.java.openjfx.backport/openjfx-78-backport/1.8.0-ea-b96.1/javafx/scene/paint/Color.java/?v=source
 		try {
-			return Color.web(name, opacity);
+			return ColorCache.get(name, opacity);
 		} catch (IllegalArgumentException ex) {
 			Base.println("Error: The color \"" + name + "\" is unknown. List of colors: http://docs.oracle.com/javase/8/javafx/api/javafx/scene/paint/Color.html");
 			System.exit(0);
@@ -1056,6 +1058,23 @@ public class Graphics {
 		return new Polyline(points, null, pen);
 	}
 
+	/**
+	 * {@code Image i = polyline(samples, 800, pen("black"));}<br>
+	 * A polyline for long data series, like sensor readings with millions of 
+	 * samples. The points are reduced to those that are visible at the given 
+	 * width in pixels: Of the points that fall into the same pixel column, 
+	 * only the first, the last, the lowest, and the highest are kept. Spikes 
+	 * remain visible. If the x-coordinates are not sorted, each column gets 
+	 * an equal number of consecutive points.
+	 * @param points a sequence of (x, y) points
+	 * @param pixelWidth the width in pixels at which the polyline is shown
+	 * @param pen pen for drawing the outline
+	 * @return the polyline
+	 */
+	public static Image polyline(double[] points, int pixelWidth, Pen pen) {
+		return new Polyline(Decimator.decimate(points, pixelWidth), null, pen);
+	}
+
 	/**
 	 * {@code Image i = polyline(rectangle(60, 20, "lightblue"), array(0.0, -10, 30, 0, 60, -5, 20, 10), "red");}<br>
 	 * <img src="./doc-files/polyline(rectangle(60,20,lightblue),array(0.0,-10,30,0,60,-5,20,10),red).png" alt="" >
@@ -1162,7 +1181,9 @@ public class Graphics {
 	
 	/**
 	 * Load a bitmap image (png, gif, or jpg) from the given location. The 
-	 * bitmap may be located in the local file system or on the Web.
+	 * bitmap may be located in the local file system or on the Web. Loaded 
+	 * files are cached, so calling this function again with the same url, 
+	 * e.g., in each frame, does not load the file again.
 	 * {@code Image i = bitmap("http://www.uni-hannover.de/fileadmin/t3luhtemplate/header/luh-logo.gif");}<br>
 	 * <img src="./doc-files/bitmap(luh-logo.gif).png" alt="" >
 	 * @param url the location of the image file (png, gif, or jpg).
@@ -1171,6 +1192,48 @@ public class Graphics {
 	public static Image bitmap(String url) {
 		return new Bitmap(url);
 	}
+
+	/**
+	 * Load a bitmap image (png, gif, or jpg) from the given location in the 
+	 * background. Returns the bitmap if it has already been loaded. Otherwise 
+	 * returns an empty image and starts loading. When loading has finished, 
+	 * the application is drawn again, so that the next call returns the 
+	 * bitmap.
+	 * @param url the location of the image file (png, gif, or jpg).
+	 * @return the loaded image, or an empty image if it is not loaded yet
+	 */
+	public static Image bitmapAsync(String url) {
+		return bitmapAsync(url, null);
+	}
+
+	/**
+	 * Load a bitmap image (png, gif, or jpg) from the given location in the 
+	 * background. Returns the bitmap if it has already been loaded. Otherwise 
+	 * returns an empty image and starts loading. When loading has finished, 
+	 * onLoaded is called with the size of the bitmap (on the JavaFX 
+	 * application thread, if the application has been started) and the 
+	 * application is drawn again, so that the next call returns the bitmap. 
+	 * If loading fails, the next call starts loading again.
+	 * @param url the location of the image file (png, gif, or jpg).
+	 * @param onLoaded called with the size of the bitmap when loading has finished
+	 * @return the loaded image, or an empty image if it is not loaded yet
+	 */
+	public static Image bitmapAsync(String url, Consumer<Size> onLoaded) {
+		BitmapData data = BitmapCache.getAsync(url, onLoaded == null ? null : 
+				d -> onLoaded.accept(new Size(d.width, d.height)));
+		return data == null ? space(0) : new Bitmap(data);
+	}
+
+	/**
+	 * Set the maximum memory used for caching loaded bitmap files. If the 
+	 * decoded files need more memory, the least recently used ones are 
+	 * removed from the cache. The most recently loaded file is always kept. 
+	 * The default is 64 MB.
+	 * @param bytes the maximum memory in bytes
+	 */
+	public static void setBitmapCacheSize(long bytes) {
+		BitmapCache.setMaxBytes(bytes);
+	}
 	
 	/**
 	 * Create a 1-pixel wide pen of the given color.
@@ -1335,7 +1398,7 @@ public class Graphics {
 	public static Image beside(String align, Image... images) {
 		Group g = new Group();
 		for (Image image : images) {
-			g.add(image, g.width, 0);
+			g.append(image, g.width, 0);
 		}
 		if (null != align) switch (align) {
 			case "middle":
@@ -1348,6 +1411,7 @@ public class Graphics {
 					c.y = g.height - c.height;
 				}	break;
 		}
+		g.composed = true;
 		return g;
 	}
 	
@@ -1402,7 +1466,7 @@ public class Graphics {
 	public static Image above(String align, Image... images) {
 		Group g = new Group();
 		for (Image image : images) {
-			g.add(image, 0, g.height);
+			g.append(image, 0, g.height);
 		}
 		if (null != align) switch (align) {
 			case "middle":
@@ -1415,6 +1479,7 @@ public class Graphics {
 					c.x = g.width - c.width;
 				}	break;
 		}
+		g.composed = true;
 		return g;
 	}
 	
@@ -1471,7 +1536,7 @@ public class Graphics {
 		Group g = new Group();
 		for (int i = images.length - 1; i >= 0; i--) {
 			Image image = images[i];
-			g.add(image, 0, 0);
+			g.append(image, 0, 0);
 		}
 		if (null != xAlign) switch (xAlign) {
 			case "center":
@@ -1495,6 +1560,7 @@ public class Graphics {
 					c.y = g.height - c.height;
 				}	break;
 		}
+		g.composed = true;
 		return g;
 	}
 		
@@ -1523,7 +1589,7 @@ public class Graphics {
 	public static Image overlay(String xAlign, String yAlign, double dx, double dy, Image... images) {
 		Group g = new Group();
 		for (int i = images.length - 1; i >= 0; i--) {
-			g.add(images[i], 0, 0);
+			g.append(images[i], 0, 0);
 		}
 		double x = 0.0, y = 0.0; // position of next image
 		
@@ -1587,6 +1653,7 @@ public class Graphics {
 			g.width = x2 - x1;
 			g.height = y2 - y1;
 		}
+		g.composed = true;
 		return g;
 	}
 
@@ -1611,7 +1678,7 @@ public class Graphics {
 	public static Image underlay(String xAlign, String yAlign, Image... images) {
 		Group g = new Group();
 		for (Image image : images) {
-			g.add(image, 0, 0);
+			g.append(image, 0, 0);
 		}
 		if (null != xAlign) switch (xAlign) {
 			case "center":
@@ -1635,6 +1702,7 @@ public class Graphics {
 					c.y = g.height - c.height;
 				}	break;
 		}
+		g.composed = true;
 		return g;
 	}
 
@@ -1663,7 +1731,7 @@ public class Graphics {
 	public static Image underlay(String xAlign, String yAlign, double dx, double dy, Image... images) {
 		Group g = new Group();
 		for (Image image : images) {
-			g.add(image, 0, 0);
+			g.append(image, 0, 0);
 		}
 		double x = 0.0, y = 0.0; // position of next image
 		
@@ -1727,6 +1795,7 @@ public class Graphics {
 			g.width = x2 - x1;
 			g.height = y2 - y1;
 		}
+		g.composed = true;
 		return g;
 	}
 
@@ -1775,6 +1844,64 @@ public class Graphics {
 		return i.save(fileName);
 	}
 
+	/**
+	 * Save the image in png format under the given name. The name may include 
+	 * the path. Overwrites existing file of the same name. 
+	 * @param i image to save
+	 * @param fileName name of the file to create.
+	 * @param renderer the way the image is drawn
+	 * @return true if the image was successfully saved, false otherwise
+	 */
+	public static boolean save(Image i, String fileName, Renderer renderer) {
+		return i.save(fileName, renderer);
+	}
+
+	/**
+	 * Save the image in SVG format under the given name. The name may include 
+	 * the path. Overwrites existing file of the same name. 
+	 * @param i image to save
+	 * @param fileName name of the file to create.
+	 * @return true if the image was successfully saved, false otherwise
+	 */
+	public static boolean saveSvg(Image i, String fileName) {
+		return i.saveSvg(fileName);
+	}
+
+	/**
+	 * Save many images in png format. Drawing happens on the calling thread 
+	 * with {@link Renderer#SOFTWARE}, which does not need JavaFX, so this 
+	 * also works from a plain main method. The png files are encoded and 
+	 * written by several threads in parallel. Overwrites existing files of 
+	 * the same names.
+	 * <pre>
+	 * {@code
+	 * Map<String, Image> images = new LinkedHashMap<>();
+	 * for (int i = 1; i <= 100; i++) {
+	 *     images.put("circle" + i + ".png", circle(i, "red"));
+	 * }
+	 * saveAll(images);
+	 * }</pre>
+	 * @param images maps file names (which may include the path) to images
+	 * @return true if all images were successfully saved, false otherwise
+	 */
+	public static boolean saveAll(Map<String, Image> images) {
+		return Exporter.saveAll(images, Renderer.SOFTWARE);
+	}
+
+	/**
+	 * Save many images in png format. Drawing happens on the calling thread, 
+	 * while the png files are encoded and written by several threads in 
+	 * parallel. Overwrites existing files of the same names. 
+	 * {@link Renderer#SCENE_GRAPH} and {@link Renderer#CANVAS} need the 
+	 * JavaFX toolkit and must be used on the JavaFX application thread.
+	 * @param images maps file names (which may include the path) to images
+	 * @param renderer the way the images are drawn
+	 * @return true if all images were successfully saved, false otherwise
+	 */
+	public static boolean saveAll(Map<String, Image> images, Renderer renderer) {
+		return Exporter.saveAll(images, renderer);
+	}
+
 	/*
 	Image crop(double x, double y, double width, double height, Image img) {
 		Image img2 = img.copy();
@@ -1814,12 +1941,32 @@ public class Graphics {
 		for (int row = 0; row < nRows; row++) {
 			for (int col = 0; col < nCols; col++) {
 				Image image = images[row][col];
-				g.add(image, col * maxWidth, row * maxHeight);
+				g.append(image, col * maxWidth, row * maxHeight);
 			}
 		}
+		g.composed = true;
 		return g;
 	}
 		
+	/**
+	 * Create a builder for placing many images on an empty (transparent) 
+	 * canvas of the given size. Placing images with the builder is much 
+	 * faster than repeatedly calling {@code underlay}.
+	 * <pre>
+	 * {@code
+	 * ImageBuilder b = canvasBuilder(800, 800);
+	 * b.place(square(30, "red"), 100, 50);
+	 * b.place(circle(10, "blue"), 200, 70);
+	 * Image i = b.build();
+	 * }</pre>
+	 * @param width the width of the canvas
+	 * @param height the height of the canvas
+	 * @return the builder
+	 */
+	public static ImageBuilder canvasBuilder(double width, double height) {
+		return new ImageBuilder(width, height);
+	}
+		
 	/**
 	 * {@code Image i = arc(20, 45, 270, "red");}<br>
 	 * <img src="./doc-files/arc(20,45,270,red).png" alt="" >
@@ -15,9 +15,14 @@
  */
 package prog1.graphics;
 
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import javafx.collections.ObservableList;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.transform.Transform;
 
 /**
@@ -31,6 +36,16 @@ public class Group extends Image {
 	 */
 	public final List<Child> children = new ArrayList<>();
 
+	// extent of the children in group coordinates, updated incrementally by add
+	private double minX = Double.POSITIVE_INFINITY;
+	private double minY = Double.POSITIVE_INFINITY;
+	private double maxX = Double.NEGATIVE_INFINITY;
+	private double maxY = Double.NEGATIVE_INFINITY;
+	private int extentCount; // number of children included in the extent
+	
+	// true if created by a composition function of Graphics (beside, above, ...)
+	boolean composed;
+
 	/**
 	 * Create an empty group.
 	 */
@@ -68,19 +83,100 @@ public class Group extends Image {
 	}
 
 	/**
-	 * Add a new group member at position (x, y).
+	 * Add a new group member at position (x, y). The size of the group is 
+	 * updated incrementally, i.e., in constant time per added image, unless 
+	 * children have been moved, rotated, or scaled since they were added. 
+	 * In that case the size is recomputed from all children.
 	 * @param image the image to add to the group
 	 * @param x x-coordinate of upper left corner of image in group
 	 * @param y y-coordinate of upper left corner of image in group
 	 */
 	public void add(Image image, double x, double y) {
-		children.add(new Child(image, x, y));
-		Rect r = boundingBox(Util.identityTransform);
-		width = r.width;
-		height = r.height;
+		if (!isExtentValid()) {
+			updateExtent();
+		}
+		append(image, x, y);
+	}
+	
+	/**
+	 * Add a new group member at position (x, y) without checking whether 
+	 * the other children have been changed. Only for groups under 
+	 * construction whose children have not been changed since they were added.
+	 * @param image the image to add to the group
+	 * @param x x-coordinate of upper left corner of image in group
+	 * @param y y-coordinate of upper left corner of image in group
+	 */
+	void append(Image image, double x, double y) {
+		Child c = new Child(image, x, y);
+		children.add(c);
+		include(c);
+		extentCount++;
+		width = maxX - minX;
+		height = maxY - minY;
 //		Base.println("bb = " + r + ", w = " + width + ", h = " + height);
 	}
 	
+	/**
+	 * Checks whether the extent still covers exactly the children, i.e., 
+	 * whether no children have been added to or removed from the list 
+	 * directly and no child has been moved, rotated, or scaled.
+	 * @return true if the extent is valid
+	 */
+	private boolean isExtentValid() {
+		if (extentCount != children.size()) {
+			return false;
+		}
+		for (Child c : children) {
+			if (c.isChanged()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Recomputes the extent and the size of this group from the cached 
+	 * bounds of the children.
+	 */
+	private void updateExtent() {
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		maxX = Double.NEGATIVE_INFINITY;
+		maxY = Double.NEGATIVE_INFINITY;
+		for (Child c : children) {
+			include(c);
+		}
+		extentCount = children.size();
+		if (extentCount > 0) {
+			width = maxX - minX;
+			height = maxY - minY;
+		}
+	}
+	
+	private void include(Child c) {
+		minX = Math.min(minX, c.minX());
+		minY = Math.min(minY, c.minY());
+		maxX = Math.max(maxX, c.maxX());
+		maxY = Math.max(maxY, c.maxY());
+		c.markIncluded();
+	}
+	
+	/**
+	 * Checks whether the image of the given child may be replaced by its 
+	 * children without changing appearance or event handling.
+	 * @param c the child
+	 * Only groups created by the composition functions of {@link Graphics} 
+	 * are merged, groups built by the user are kept as they are.
+	 * @return true if the child is a translated, non-empty composed group without mouse handlers
+	 */
+	static boolean isMergeable(Child c) {
+		if (!c.isTranslation() || c.image.getClass() != Group.class) {
+			return false;
+		}
+		Group g = (Group) c.image;
+		return g.composed && !g.children.isEmpty() && !g.hasMouseFunctions();
+	}
+	
 	/**
 	 * Return the i-th group element.
 	 * @param i index of group element
@@ -98,23 +194,49 @@ public class Group extends Image {
 		return children.size();
 	}
 	
+	/**
+	 * Returns the bounding box of this group under the given affine 
+	 * transformation, computed from the bounding boxes of its children 
+	 * rather than by rendering.
+	 * @param t affine transform
+	 * @return bounding box
+	 */
 	@Override
 	public Rect boundingBox(Transform t) {
-		double x1 = Double.POSITIVE_INFINITY;
-		double y1 = Double.POSITIVE_INFINITY;
-		double x2 = Double.NEGATIVE_INFINITY;
-		double y2 = Double.NEGATIVE_INFINITY;
-		for (Child c : children) {
-			Transform tr = Transform.rotate(-c.angle, 0, 0);
-			Transform tt = Transform.translate(c.x, c.y);
-			Transform ts = Transform.scale(c.xScale, c.yScale);
-			Rect r = c.image.boundingBox(t.createConcatenation(tt).createConcatenation(tr).createConcatenation(ts));
-			x1 = Math.min(x1, r.x);
-			y1 = Math.min(y1, r.y);
-			x2 = Math.max(x2, r.x + r.width);
-			y2 = Math.max(y2, r.y + r.height);
+		return bounds(t);
+	}
+
+	/**
+	 * Adds the bounding boxes of the children to the extent. Under a pure 
+	 * translation the cached bounds of the children are used (this also 
+	 * resynchronizes the extent and the size of the group, in case children 
+	 * have been changed).
+	 * @param e the extent to add to
+	 */
+	@Override
+	void addBounds(Extent e) {
+		if (e.matrix().isTranslation()) {
+			if (!isExtentValid()) {
+				updateExtent();
+			}
+			if (children.isEmpty()) {
+				return;
+			}
+			Matrix m = e.matrix();
+			e.addTransformedBox(minX + m.tx, minY + m.ty, maxX + m.tx, maxY + m.ty);
+			return;
 		}
-		return new Rect(x1, y1, x2 - x1, y2 - y1);
+		Matrix m = e.matrix();
+		double xx = m.mxx, xy = m.mxy, tx = m.tx, yx = m.myx, yy = m.myy, ty = m.ty;
+		visitUnmerged((c, dx, dy) -> {
+			if (dx != 0 || dy != 0) {
+				e.concatenate(1, 0, dx, 0, 1, dy);
+				c.addBounds(e);
+				e.setMatrix(xx, xy, tx, yx, yy, ty);
+			} else {
+				c.addBounds(e);
+			}
+		}, 0, 0);
 	}
 
 	public Point childCenter(int... indices) {
@@ -166,15 +288,60 @@ public class Group extends Image {
 //		return new Point(x, y);
 //	}
 	
+	@Override
+	protected void draw(GraphicsContext gc) {
+		visitUnmerged((c, dx, dy) -> c.draw(gc, dx, dy), 0, 0);
+	}
+
+	/**
+	 * Draws the children with Java2D. Children outside of the clip region 
+	 * of the graphics are skipped.
+	 * @param g the Java2D graphics to draw onto
+	 */
+	@Override
+	protected void draw(Graphics2D g) {
+		Rectangle clip = g.getClipBounds();
+		visitUnmerged((c, dx, dy) -> {
+			if (clip != null) {
+				if (c.minX() + dx > clip.x + clip.width || c.maxX() + dx < clip.x || 
+						c.minY() + dy > clip.y + clip.height || c.maxY() + dy < clip.y) {
+					return;
+				}
+			}
+			c.draw(g, dx, dy);
+		}, 0, 0);
+	}
+
+	@Override
+	protected void svg(SvgWriter out) throws IOException {
+		IOException[] failure = new IOException[1];
+		visitUnmerged((c, dx, dy) -> {
+			if (failure[0] == null) {
+				try {
+					c.svg(out, dx, dy);
+				} catch (IOException ex) {
+					failure[0] = ex;
+				}
+			}
+		}, 0, 0);
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	@Override
+	void prepare() {
+		visitUnmerged((c, dx, dy) -> c.prepare(), 0, 0);
+	}
+
 	@Override
 	protected javafx.scene.Node render() {
 //		System.out.println("<Group>");
 		javafx.scene.Group jfxNode = new javafx.scene.Group();
+		FrameStats.countNode();
 		ObservableList<javafx.scene.Node> jfxNodeChildren = jfxNode.getChildren();
 //		jfxNodeChildren.add(new javafx.scene.shape.Rectangle(width, height, new Color(0, 0, 1, 0.1)));
-		for (Child c : children) {
-			jfxNodeChildren.add(c.render());
-		}
+		renderChildren(jfxNodeChildren);
 //		jfxNode.setLayoutX(0);
 //		jfxNode.setLayoutY(0);
 //		System.out.println("  layoutBounds: " + jfxNode.getLayoutBounds());
@@ -183,38 +350,76 @@ public class Group extends Image {
 //		System.out.printf("  translateXY: %f, %f\n", jfxNode.getTranslateX(), jfxNode.getTranslateY());
 //		System.out.println("</Group>");
 		
-		if (pressFunction != null) {
-			jfxNode.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_PRESSED, (javafx.scene.input.MouseEvent e) -> {
-//				System.out.println("group press");
-				pressFunction.apply(new MouseEvent(e), pressFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (releaseFunction != null) {
-			jfxNode.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_RELEASED, (javafx.scene.input.MouseEvent e) -> {
-//				System.out.println("group release");
-				releaseFunction.apply(new MouseEvent(e), releaseFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (moveFunction != null) {
-			jfxNode.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_MOVED, (javafx.scene.input.MouseEvent e) -> {
-				moveFunction.apply(new MouseEvent(e), moveFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (dragFunction != null) {
-			jfxNode.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_DRAGGED, (javafx.scene.input.MouseEvent e) -> {
-				dragFunction.apply(new MouseEvent(e), dragFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
+		return jfxNode;
+	}
+	
+	/**
+	 * Receives the children of a group that are not merged into it.
+	 */
+	interface ChildVisitor {
+		/**
+		 * Visit a child.
+		 * @param c the child
+		 * @param dx shift of the child in x-direction (from merged groups)
+		 * @param dy shift of the child in y-direction (from merged groups)
+		 */
+		void visit(Child c, double dx, double dy);
+	}
+	
+	/**
+	 * Visits the children of this group moved by (dx, dy), in drawing order. 
+	 * Children that could be merged into this group are not visited 
+	 * themselves, instead their children are visited in place. Uses an 
+	 * explicit stack, so repeated compositions like 
+	 * {@code img = beside(img, x)} may nest arbitrarily deep.
+	 * @param visitor the visitor
+	 * @param dx shift in x-direction
+	 * @param dy shift in y-direction
+	 */
+	void visitUnmerged(ChildVisitor visitor, double dx, double dy) {
+		ArrayDeque<Visit> stack = null;
+		Visit v = new Visit(this, dx, dy);
+		while (v != null) {
+			if (v.index < v.group.children.size()) {
+				Child c = v.group.children.get(v.index++);
+				if (isMergeable(c)) {
+					if (stack == null) {
+						stack = new ArrayDeque<>();
+					}
+					stack.push(v);
+					v = new Visit((Group) c.image, v.dx + c.x, v.dy + c.y);
+				} else {
+					visitor.visit(c, v.dx, v.dy);
+				}
+			} else {
+				v = stack == null ? null : stack.poll();
+			}
 		}
+	}
+	
+	/**
+	 * A group whose children are being visited, moved by (dx, dy).
+	 */
+	private static class Visit {
+		final Group group;
+		final double dx, dy;
+		int index; // next child to visit
 		
-		return jfxNode;
+		Visit(Group group, double dx, double dy) {
+			this.group = group;
+			this.dx = dx;
+			this.dy = dy;
+		}
+	}
+	
+	/**
+	 * Renders the children of this group. Children that could be merged 
+	 * into this group are rendered in place, so that nested compositions 
+	 * result in a flat JavaFX scene graph.
+	 * @param nodes the list to add the rendered children to
+	 */
+	private void renderChildren(List<javafx.scene.Node> nodes) {
+		visitUnmerged((c, dx, dy) -> nodes.add(c.render(dx, dy)), 0, 0);
 	}
 	
 	@Override
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the tick and drawing functions of an application without JavaFX and 
+ * without a display, e.g., for tests and benchmarks on servers. Time is 
+ * simulated: the n-th frame gets the time n / frameRate, regardless of how 
+ * long the frames take. Frames are computed as fast as possible, or in 
+ * real time. Mouse and key events can be scripted for given times; they 
+ * reach the mouse functions of images and the registered event functions 
+ * as with {@link ApplicationBase}. Images are composed, and rasterized if 
+ * requested, but not shown.
+ * <pre>
+ * {@code
+ * HeadlessApplication app = new HeadlessApplication(800, 600, this::onDraw);
+ * app.setOnTick(this::onTick);
+ * app.mousePressed(1.0, 100, 100);
+ * app.run(600, 60); // 10 simulated seconds at 60 frames per second
+ * Base.println(app.getFramesPerSecond());
+ * }</pre>
+ * @author michaelrohs
+ */
+public class HeadlessApplication {
+	private final int width, height;
+	private DrawFunction onDraw;
+	private TickFunction onTick;
+	private MouseFunction onMousePressed, onMouseReleased, onMouseMoved, onMouseDragged;
+	private KeyFunction onKeyPressed, onKeyReleased;
+	private boolean rasterizing;
+	private FrameCapture capture;
+
+	private final List<ScriptedEvent> events = new ArrayList<>();
+	private int nextEvent; // index of the next event to deliver, events are sorted by time
+	private final MouseDispatcher mouse = new MouseDispatcher();
+	private int[] pixels;
+	private Image image; // the most recently drawn image
+	private double time; // the simulated time of the most recent frame
+	private long frameCount;
+	private double framesPerSecond; // measured in the most recent run
+
+	/**
+	 * A mouse or key event at a simulated time.
+	 */
+	private static class ScriptedEvent {
+		final double time;
+		final int kind; // an InputLog kind of a mouse or key event
+		final double x, y;
+		final String key;
+
+		ScriptedEvent(double time, int kind, double x, double y, String key) {
+			this.time = time;
+			this.kind = kind;
+			this.x = x;
+			this.y = y;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Creates a headless application.
+	 * @param width the width of the simulated window
+	 * @param height the height of the simulated window
+	 * @param onDraw the drawing callback function
+	 */
+	public HeadlessApplication(int width, int height, DrawFunction onDraw) {
+		this.width = width;
+		this.height = height;
+		this.onDraw = onDraw;
+	}
+
+	/**
+	 * Registers another drawing callback function.
+	 * @param onDraw drawing callback function
+	 */
+	public void setOnDraw(DrawFunction onDraw) {
+		this.onDraw = onDraw;
+	}
+
+	/**
+	 * Register a tick callback function.
+	 * @param onTick the callback function
+	 */
+	public void setOnTick(TickFunction onTick) {
+		this.onTick = onTick;
+	}
+
+	/**
+	 * Register a mouse-button-press callback function.
+	 * @param onMouse the callback function
+	 */
+	public void setOnMousePressed(MouseFunction onMouse) {
+		onMousePressed = onMouse;
+	}
+
+	/**
+	 * Register a mouse-button-release callback function.
+	 * @param onMouse the callback function
+	 */
+	public void setOnMouseReleased(MouseFunction onMouse) {
+		onMouseReleased = onMouse;
+	}
+
+	/**
+	 * Register a mouse-move callback function.
+	 * @param onMouse the callback function
+	 */
+	public void setOnMouseMoved(MouseFunction onMouse) {
+		onMouseMoved = onMouse;
+	}
+
+	/**
+	 * Register a mouse-drag callback function.
+	 * @param onMouse the callback function
+	 */
+	public void setOnMouseDragged(MouseFunction onMouse) {
+		onMouseDragged = onMouse;
+	}
+
+	/**
+	 * Register a key-press callback function.
+	 * @param onKeyPressed the callback function
+	 */
+	public void setOnKeyPressed(KeyFunction onKeyPressed) {
+		this.onKeyPressed = onKeyPressed;
+	}
+
+	/**
+	 * Register a key-release callback function.
+	 * @param onKeyReleased the callback function
+	 */
+	public void setOnKeyReleased(KeyFunction onKeyReleased) {
+		this.onKeyReleased = onKeyReleased;
+	}
+
+	/**
+	 * Switches rasterizing each frame on or off. If on, each image is 
+	 * rasterized with {@link Rasterizer}, so that the measured frame rate 
+	 * includes rendering. Off by default.
+	 * @param rasterizing true to rasterize each frame
+	 */
+	public void setRasterizing(boolean rasterizing) {
+		this.rasterizing = rasterizing;
+	}
+
+	/**
+	 * Captures each drawn image into the given capture, e.g., 
+	 * {@link FrameCapture#pngSequence(String, int, int, double)}. Since 
+	 * time is simulated, the captured animation has exactly the frame rate 
+	 * passed to {@link #run(int, double)}. The initial frame drawn before the 
+	 * first tick is not captured. The capture is not closed.
+	 * @param capture the capture, null to stop capturing
+	 */
+	public void setCapture(FrameCapture capture) {
+		this.capture = capture;
+	}
+
+	/**
+	 * Schedules a mouse-button press at the given simulated time. The 
+	 * primary button is down.
+	 * @param time the simulated time in seconds
+	 * @param x x-coordinate in the window
+	 * @param y y-coordinate in the window
+	 */
+	public void mousePressed(double time, double x, double y) {
+		schedule(new ScriptedEvent(time, InputLog.MOUSE_PRESSED, x, y, null));
+	}
+
+	/**
+	 * Schedules a mouse-button release at the given simulated time.
+	 * @param time the simulated time in seconds
+	 * @param x x-coordinate in the window
+	 * @param y y-coordinate in the window
+	 */
+	public void mouseReleased(double time, double x, double y) {
+		schedule(new ScriptedEvent(time, InputLog.MOUSE_RELEASED, x, y, null));
+	}
+
+	/**
+	 * Schedules a mouse move without pressed buttons at the given simulated time.
+	 * @param time the simulated time in seconds
+	 * @param x x-coordinate in the window
+	 * @param y y-coordinate in the window
+	 */
+	public void mouseMoved(double time, double x, double y) {
+		schedule(new ScriptedEvent(time, InputLog.MOUSE_MOVED, x, y, null));
+	}
+
+	/**
+	 * Schedules a mouse move with the primary button down at the given 
+	 * simulated time.
+	 * @param time the simulated time in seconds
+	 * @param x x-coordinate in the window
+	 * @param y y-coordinate in the window
+	 */
+	public void mouseDragged(double time, double x, double y) {
+		schedule(new ScriptedEvent(time, InputLog.MOUSE_DRAGGED, x, y, null));
+	}
+
+	/**
+	 * Schedules a key press at the given simulated time.
+	 * @param time the simulated time in seconds
+	 * @param key the key or uppercase key code, like "a" or "LEFT"
+	 */
+	public void keyPressed(double time, String key) {
+		schedule(new ScriptedEvent(time, InputLog.KEY_PRESSED, 0, 0, key));
+	}
+
+	/**
+	 * Schedules a key release at the given simulated time.
+	 * @param time the simulated time in seconds
+	 * @param key the key or uppercase key code, like "a" or "LEFT"
+	 */
+	public void keyReleased(double time, String key) {
+		schedule(new ScriptedEvent(time, InputLog.KEY_RELEASED, 0, 0, key));
+	}
+
+	/**
+	 * Runs the given number of frames as fast as possible. The simulated 
+	 * time advances by 1 / frameRate per frame. Events scheduled up to the 
+	 * time of a frame are delivered before its tick. Further calls continue 
+	 * where the previous one stopped.
+	 * @param frames the number of frames
+	 * @param frameRate the simulated frames per second
+	 */
+	public void run(int frames, double frameRate) {
+		run(frames, frameRate, false);
+	}
+
+	/**
+	 * Runs the given number of frames in real time, i.e., waits until the 
+	 * simulated time of a frame has been reached before computing it, as 
+	 * an animation timer would. 
+	 * @param frames the number of frames
+	 * @param frameRate the frames per second
+	 */
+	public void runRealTime(int frames, double frameRate) {
+		run(frames, frameRate, true);
+	}
+
+	private void run(int frames, double frameRate, boolean realTime) {
+		if (image == null) {
+			draw(false);
+		}
+		long start = System.nanoTime();
+		long first = frameCount;
+		for (int i = 0; i < frames; i++) {
+			time = frameCount / frameRate;
+			if (realTime) {
+				long wait = start + (long) ((frameCount - first) / frameRate * 1e9) - System.nanoTime();
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+			long frame = FrameStats.start();
+			deliverEvents(time);
+			if (onTick != null) {
+				long t = FrameStats.start();
+				onTick.apply(time);
+				FrameStats.stop(FrameStats.Phase.TICK, t);
+			}
+			draw();
+			FrameStats.stop(FrameStats.Phase.FRAME, frame);
+			frameCount++;
+		}
+		long elapsed = System.nanoTime() - start;
+		framesPerSecond = elapsed > 0 ? frames * 1e9 / elapsed : 0;
+	}
+
+	/**
+	 * Replays an input log recorded with 
+	 * {@link ApplicationBase#startRecording(String)}. The tick, drawing, 
+	 * mouse, and key functions are called with the recorded arguments in 
+	 * the recorded order, either as fast as possible or at the recorded 
+	 * times. The achieved frame rate counts the drawings.
+	 * @param fileName the name of the log file
+	 * @param realTime true to replay at the original speed
+	 * @return true if the log could be read
+	 */
+	public boolean replay(String fileName, boolean realTime) {
+		try (InputLog.Reader in = new InputLog.Reader(fileName)) {
+			if (image == null) {
+				draw(false);
+			}
+			long start = System.nanoTime();
+			long draws = 0;
+			while (in.next()) {
+				if (realTime) {
+					long wait = start + (long) (in.time * 1e9) - System.nanoTime();
+					if (wait > 0) {
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+					}
+				}
+				switch (in.kind) {
+					case InputLog.TICK:
+						time = in.tickTime;
+						frameCount++;
+						if (onTick != null) {
+							long t = FrameStats.start();
+							onTick.apply(time);
+							FrameStats.stop(FrameStats.Phase.TICK, t);
+						}
+						break;
+					case InputLog.DRAW:
+						draw();
+						draws++;
+						break;
+					case InputLog.KEY_PRESSED: case InputLog.KEY_RELEASED:
+						deliverKey(in.kind == InputLog.KEY_PRESSED, in.key);
+						break;
+					default:
+						deliverMouse(in.kind, in.mouseEvent);
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			framesPerSecond = elapsed > 0 ? draws * 1e9 / elapsed : 0;
+		} catch (IOException ex) {
+			System.err.println("HeadlessApplication.replay:\n" + ex);
+			return false;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The simulated time of the most recent frame.
+	 * @return the time in seconds
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * The number of frames run so far.
+	 * @return the frame count
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * The frame rate achieved in the most recent run, in wall-clock time.
+	 * @return the frames per second
+	 */
+	public double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * The image of the most recent frame.
+	 * @return the image, null before the first run
+	 */
+	public Image getImage() {
+		return image;
+	}
+
+	/**
+	 * The pixels of the most recent frame, as 0xAARRGGBB, row by row. 
+	 * Only available if rasterizing.
+	 * @return the pixels, null if not rasterizing
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	private void schedule(ScriptedEvent e) {
+		// keep the events sorted by time, events at the same time in the order of scheduling
+		int i = events.size();
+		while (i > nextEvent && events.get(i - 1).time > e.time) {
+			i--;
+		}
+		events.add(i, e);
+	}
+
+	private void deliverEvents(double time) {
+		while (nextEvent < events.size() && events.get(nextEvent).time <= time) {
+			ScriptedEvent e = events.get(nextEvent++);
+			if (e.kind == InputLog.KEY_PRESSED || e.kind == InputLog.KEY_RELEASED) {
+				deliverKey(e.kind == InputLog.KEY_PRESSED, e.key);
+			} else {
+				boolean down = e.kind == InputLog.MOUSE_PRESSED || e.kind == InputLog.MOUSE_DRAGGED;
+				deliverMouse(e.kind, 
+						new MouseEvent(e.x, e.y, down, false, false, false, false, false, false));
+			}
+		}
+	}
+
+	/**
+	 * Delivers a mouse event to the mouse function of the image under the 
+	 * mouse, or else to the registered mouse function.
+	 */
+	private void deliverMouse(int kind, MouseEvent event) {
+		if (mouse.dispatch(kind, event)) {
+			return;
+		}
+		MouseFunction f = 
+				kind == InputLog.MOUSE_PRESSED ? onMousePressed : 
+				kind == InputLog.MOUSE_RELEASED ? onMouseReleased : 
+				kind == InputLog.MOUSE_MOVED ? onMouseMoved : onMouseDragged;
+		if (f != null) {
+			f.apply(event, null);
+		}
+	}
+
+	private void deliverKey(boolean pressed, String key) {
+		KeyFunction f = pressed ? onKeyPressed : onKeyReleased;
+		if (f != null) {
+			f.apply(key);
+		}
+	}
+
+	private void draw() {
+		draw(true);
+	}
+
+	/**
+	 * Calls the drawing function and makes the result the current frame.
+	 * @param captured false for the initial frame that is only drawn so 
+	 * that early events find their targets, it is not captured
+	 */
+	private void draw(boolean captured) {
+		long t = FrameStats.start();
+		image = onDraw.apply();
+		FrameStats.stop(FrameStats.Phase.DRAW, t);
+		mouse.setFrame(image);
+		if (captured && capture != null) {
+			capture.add(image);
+		}
+		if (rasterizing) {
+			t = FrameStats.start();
+			if (pixels == null) {
+				pixels = new int[width * height];
+			} else {
+				Arrays.fill(pixels, 0);
+			}
+			Rasterizer.rasterize(image, pixels, width, height);
+			FrameStats.stop(FrameStats.Phase.RENDER, t);
+		}
+	}
+
+}
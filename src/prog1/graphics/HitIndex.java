@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.transform.Transform;
+
+/**
+ * Finds the image under a point of a drawn frame. The leaf images of the 
+ * frame are put into a uniform grid by their bounding boxes in frame 
+ * coordinates. A query only tests the images in the grid cell of the point, 
+ * from front to back, against their exact outlines. The grid is only built 
+ * if the frame contains images with mouse functions.
+ * @author michaelrohs
+ */
+class HitIndex {
+
+	/**
+	 * An image with mouse functions and the closest enclosing image with 
+	 * mouse functions. Events that the image does not handle go to the 
+	 * enclosing image, as JavaFX events bubble up the scene graph.
+	 */
+	static class Target {
+		final Image image;
+		final Target parent;
+
+		Target(Image image, Target parent) {
+			this.image = image;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * A leaf image with its transformation to frame coordinates, its 
+	 * bounding box in frame coordinates, and its closest target.
+	 */
+	private static class Entry {
+		final Image image;
+		final double mxx, mxy, myx, myy, tx, ty;
+		final double x1, y1, x2, y2;
+		final Target target;
+
+		Entry(Image image, double mxx, double mxy, double myx, double myy, double tx, double ty, 
+				double x1, double y1, double x2, double y2, Target target) 
+		{
+			this.image = image;
+			this.mxx = mxx;
+			this.mxy = mxy;
+			this.myx = myx;
+			this.myy = myy;
+			this.tx = tx;
+			this.ty = ty;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.x2 = x2;
+			this.y2 = y2;
+			this.target = target;
+		}
+
+		/**
+		 * Checks whether the point (in frame coordinates) is on the image.
+		 */
+		boolean contains(double x, double y) {
+			if (x < x1 || x > x2 || y < y1 || y > y2) {
+				return false;
+			}
+			double det = mxx * myy - mxy * myx;
+			if (det == 0) {
+				return false;
+			}
+			double dx = x - tx;
+			double dy = y - ty;
+			return image.contains((myy * dx - mxy * dy) / det, (mxx * dy - myx * dx) / det);
+		}
+	}
+
+	private final List<Entry> entries = new ArrayList<>();
+	private boolean interactive; // whether any image has mouse functions
+	private double gridX, gridY, cellWidth, cellHeight;
+	private int columns, rows;
+	private int[] cellStarts; // index of the first item of each cell in items, row by row
+	private int[] items; // entry indices per cell, from back to front
+
+	private HitIndex() {}
+
+	/**
+	 * Builds the index for a frame.
+	 * @param image the frame, with its origin at the origin of the scene
+	 * @return the index, null if the frame has no images with mouse functions
+	 */
+	static HitIndex build(Image image) {
+		HitIndex index = new HitIndex();
+		Rect r = image.bounds(Util.identityTransform);
+		index.add(image, 1, 0, 0, 1, 0, 0, r.x, r.y, r.x + r.width, r.y + r.height, null);
+		if (!index.interactive) {
+			return null;
+		}
+		index.buildGrid();
+		return index;
+	}
+
+	/**
+	 * Adds the leaves of the image to the entries. The bounding box of the 
+	 * image is given in frame coordinates.
+	 */
+	private void add(Image image, double mxx, double mxy, double myx, double myy, double tx, double ty, 
+			double x1, double y1, double x2, double y2, Target target) 
+	{
+		if (image.hasMouseFunctions()) {
+			target = new Target(image, target);
+			interactive = true;
+		}
+		if (!(image instanceof Group)) {
+			entries.add(new Entry(image, mxx, mxy, myx, myy, tx, ty, x1, y1, x2, y2, target));
+			return;
+		}
+		Target t0 = target;
+		((Group) image).visitUnmerged((c, dx, dy) -> {
+			Transform t = c.transform();
+			double cxx = mxx * t.getMxx() + mxy * t.getMyx();
+			double cxy = mxx * t.getMxy() + mxy * t.getMyy();
+			double cyx = myx * t.getMxx() + myy * t.getMyx();
+			double cyy = myx * t.getMxy() + myy * t.getMyy();
+			double ctx = mxx * (t.getTx() + dx) + mxy * (t.getTy() + dy) + tx;
+			double cty = myx * (t.getTx() + dx) + myy * (t.getTy() + dy) + ty;
+			// bounding box of the corners of the child bounds in frame coordinates
+			double cx1 = c.minX() + dx, cy1 = c.minY() + dy, cx2 = c.maxX() + dx, cy2 = c.maxY() + dy;
+			double bx1 = Double.POSITIVE_INFINITY, by1 = Double.POSITIVE_INFINITY;
+			double bx2 = Double.NEGATIVE_INFINITY, by2 = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < 4; i++) {
+				double px = (i & 1) == 0 ? cx1 : cx2;
+				double py = (i & 2) == 0 ? cy1 : cy2;
+				double fx = mxx * px + mxy * py + tx;
+				double fy = myx * px + myy * py + ty;
+				bx1 = Math.min(bx1, fx);
+				by1 = Math.min(by1, fy);
+				bx2 = Math.max(bx2, fx);
+				by2 = Math.max(by2, fy);
+			}
+			add(c.image, cxx, cxy, cyx, cyy, ctx, cty, bx1, by1, bx2, by2, t0);
+		}, 0, 0);
+	}
+
+	/**
+	 * Distributes the entries over a grid of about one cell per entry.
+	 */
+	private void buildGrid() {
+		int n = entries.size();
+		double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+		double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+		for (Entry e : entries) {
+			x1 = Math.min(x1, e.x1);
+			y1 = Math.min(y1, e.y1);
+			x2 = Math.max(x2, e.x2);
+			y2 = Math.max(y2, e.y2);
+		}
+		int size = Math.max(1, Math.min(1024, (int) Math.ceil(Math.sqrt(n))));
+		columns = x2 > x1 ? size : 1;
+		rows = y2 > y1 ? size : 1;
+		gridX = x1;
+		gridY = y1;
+		cellWidth = x2 > x1 ? (x2 - x1) / columns : 1;
+		cellHeight = y2 > y1 ? (y2 - y1) / rows : 1;
+
+		// count the entries per cell, then fill the cells in entry order
+		cellStarts = new int[columns * rows + 1];
+		for (Entry e : entries) {
+			int c1 = column(e.x1), c2 = column(e.x2), r1 = row(e.y1), r2 = row(e.y2);
+			for (int r = r1; r <= r2; r++) {
+				for (int c = c1; c <= c2; c++) {
+					cellStarts[r * columns + c + 1]++;
+				}
+			}
+		}
+		for (int i = 1; i < cellStarts.length; i++) {
+			cellStarts[i] += cellStarts[i - 1];
+		}
+		items = new int[cellStarts[cellStarts.length - 1]];
+		int[] next = new int[columns * rows];
+		System.arraycopy(cellStarts, 0, next, 0, next.length);
+		for (int i = 0; i < n; i++) {
+			Entry e = entries.get(i);
+			int c1 = column(e.x1), c2 = column(e.x2), r1 = row(e.y1), r2 = row(e.y2);
+			for (int r = r1; r <= r2; r++) {
+				for (int c = c1; c <= c2; c++) {
+					items[next[r * columns + c]++] = i;
+				}
+			}
+		}
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) ((x - gridX) / cellWidth)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - gridY) / cellHeight)));
+	}
+
+	/**
+	 * Returns the target of the frontmost image at the given point.
+	 * @param x x-coordinate in frame coordinates
+	 * @param y y-coordinate in frame coordinates
+	 * @return the target, null if there is no image or the frontmost image 
+	 * has no enclosing image with mouse functions
+	 */
+	Target find(double x, double y) {
+		if (x < gridX || y < gridY || x > gridX + columns * cellWidth || y > gridY + rows * cellHeight) {
+			return null;
+		}
+		int cell = row(y) * columns + column(x);
+		for (int i = cellStarts[cell + 1] - 1; i >= cellStarts[cell]; i--) {
+			Entry e = entries.get(items[i]);
+			if (e.contains(x, y)) {
+				return e.target;
+			}
+		}
+		return null;
+	}
+
+}
@@ -15,11 +15,23 @@
  */
 package prog1.graphics;
 
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Bounds;
 import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.transform.Transform;
 import javax.imageio.ImageIO;
@@ -69,16 +81,99 @@ public abstract class Image {
 	}
 	
 	/**
-	 * Returns the bounding box of this image under the given affine transformation.
+	 * Returns the bounding box of this image under the given affine transformation. 
+	 * Subclasses outside this package may override it with a direct 
+	 * computation. This default implementation renders the image and asks 
+	 * JavaFX for its bounds.
 	 * @param t affine transform
 	 * @return bounding box
 	 */
 	protected Rect boundingBox(Transform t) {
-		javafx.scene.Node e = render();
-		e.getTransforms().setAll(t);
-		Bounds b = e.getBoundsInParent();
+		javafx.scene.Node n = render();
+		n.getTransforms().setAll(t);
+		Bounds b = n.getBoundsInParent();
 		return new Rect(b.getMinX(), b.getMinY(), b.getWidth(), b.getHeight());
-		// todo: generally use Bounds instead of Rect, remove class Rect
+	}
+
+	/**
+	 * Returns the bounding box of this image under the given affine 
+	 * transformation, as computed by {@link #addBounds}. Used within this 
+	 * package instead of {@link #boundingBox}, since the images of this 
+	 * package override {@code addBounds}.
+	 * @param t affine transform
+	 * @return bounding box
+	 */
+	Rect bounds(Transform t) {
+		Extent e = new Extent(t);
+		addBounds(e);
+		return e.toRect();
+	}
+
+	/**
+	 * Adds the bounding box of this image, under the transformation of the 
+	 * extent, to the extent. This default implementation asks 
+	 * {@link #boundingBox}, which subclasses outside this package may 
+	 * override. The images of this package override this method with a 
+	 * direct computation.
+	 * @param e the extent to add to
+	 */
+	void addBounds(Extent e) {
+		Rect r = boundingBox(e.matrix().toTransform());
+		e.addTransformedBox(r.x, r.y, r.x + r.width, r.y + r.height);
+	}
+	
+	/**
+	 * Checks whether this image and the given image have the same geometry, 
+	 * i.e., whether the JavaFX node of one may be used for the other after 
+	 * updating its colors. Used for reusing JavaFX nodes between frames.
+	 * @param image the image to compare with
+	 * @return true if the geometry is known to be the same
+	 */
+	protected boolean sameGeometry(Image image) {
+		return image == this;
+	}
+	
+	/**
+	 * Checks whether any mouse function is set on this image.
+	 * @return true if a mouse function is set
+	 */
+	boolean hasMouseFunctions() {
+		return pressFunction != null || releaseFunction != null || 
+				moveFunction != null || dragFunction != null;
+	}
+	
+	/**
+	 * Checks whether the point lies on this image. Used for finding the 
+	 * image under the mouse. This default implementation tests the 
+	 * rectangle (0, 0, width, height).
+	 * @param x x-coordinate in image coordinates
+	 * @param y y-coordinate in image coordinates
+	 * @return true if the point lies on this image
+	 */
+	boolean contains(double x, double y) {
+		return x >= 0 && y >= 0 && x <= width && y <= height;
+	}
+	
+	/**
+	 * Calls the mouse function of this image for the given kind of event.
+	 * @param kind the kind of event, one of the mouse record kinds of 
+	 * {@link InputLog}, e.g., {@link InputLog#MOUSE_PRESSED}
+	 * @param e the mouse event, passed to the mouse function
+	 * @return true if a function is set for this type of event
+	 */
+	boolean handleMouse(int kind, MouseEvent e) {
+		if (kind == InputLog.MOUSE_PRESSED && pressFunction != null) {
+			pressFunction.apply(e, pressFunctionTarget);
+		} else if (kind == InputLog.MOUSE_RELEASED && releaseFunction != null) {
+			releaseFunction.apply(e, releaseFunctionTarget);
+		} else if (kind == InputLog.MOUSE_MOVED && moveFunction != null) {
+			moveFunction.apply(e, moveFunctionTarget);
+		} else if (kind == InputLog.MOUSE_DRAGGED && dragFunction != null) {
+			dragFunction.apply(e, dragFunctionTarget);
+		} else {
+			return false;
+		}
+		return true;
 	}
 	
 	/**
@@ -87,6 +182,61 @@ public abstract class Image {
 	 */
 	protected abstract javafx.scene.Node render();
 	
+	/**
+	 * Draws the image onto a canvas, with its origin at the origin of the 
+	 * graphics context. Will be overridden for each specific subtype. 
+	 * Mouse functions are not part of the drawing; when the image is shown 
+	 * by an application, they are resolved from the geometry of the frame. 
+	 * This default implementation draws a snapshot of {@link #render()}, so 
+	 * that subclasses that only implement {@code render} can be drawn.
+	 * @param gc the graphics context to draw onto
+	 */
+	protected void draw(GraphicsContext gc) {
+		javafx.scene.Node node = render();
+		SnapshotParameters sp = new SnapshotParameters();
+		sp.setFill(Color.TRANSPARENT);
+		WritableImage snapshot = node.snapshot(sp, null);
+		Bounds bounds = node.getBoundsInParent();
+		gc.drawImage(snapshot, bounds.getMinX(), bounds.getMinY());
+	}
+	
+	/**
+	 * Draws the image with Java2D, with its origin at the origin of the 
+	 * graphics. Will be overridden for each specific subtype. Does not 
+	 * require JavaFX to be running. Mouse functions are not part of the 
+	 * drawing; when the image is shown by an application, they are resolved 
+	 * from the geometry of the frame. This default implementation draws the 
+	 * outline of the rectangle (0, 0, width, height) in gray, since the 
+	 * JavaFX node of a subclass cannot be drawn without JavaFX.
+	 * @param g the Java2D graphics to draw onto
+	 */
+	protected void draw(Graphics2D g) {
+		g.setPaint(java.awt.Color.GRAY);
+		g.setStroke(new BasicStroke(1));
+		g.draw(new Rectangle2D.Double(0, 0, width, height));
+	}
+	
+	/**
+	 * Computes the values that {@link #draw(Graphics2D)} caches on first use. 
+	 * Afterwards the image may be drawn by several threads at once.
+	 */
+	void prepare() {
+	}
+	
+	/**
+	 * Writes the image as SVG elements, with its origin at the origin of 
+	 * the current SVG coordinate system. Will be overridden for each specific 
+	 * subtype. Mouse functions are ignored. This default implementation 
+	 * writes the outline of the rectangle (0, 0, width, height) in gray, 
+	 * like {@link #draw(Graphics2D)}.
+	 * @param out the SVG writer
+	 * @throws IOException if writing fails
+	 */
+	protected void svg(SvgWriter out) throws IOException {
+		out.append("<rect").attribute("width", width).attribute("height", height)
+				.attribute("fill", "none").attribute("stroke", "gray").append("/>\n");
+	}
+	
 	protected String toString(String indent) {
 		return indent + "  " + 
 				String.format("<Image width=\"%.1f\" height=\"%.1f\"/>\n", 
@@ -108,11 +258,92 @@ public abstract class Image {
 	 * @return true if the image could successfully be saved
 	 */
 	public boolean save(String fileName) {
-		File file = new File(fileName);
+		return save(fileName, Renderer.SCENE_GRAPH);
+	}
+	
+	/**
+	 * Save the image as a png file.
+	 * @param fileName the name of the file
+	 * @param renderer the way the image is drawn
+	 * @return true if the image could successfully be saved
+	 */
+	public boolean save(String fileName, Renderer renderer) {
+		return write(pixels(renderer), new File(fileName));
+	}
+	
+	/**
+	 * Draws the image into pixels for saving. With the JavaFX renderers 
+	 * this needs to be called on the JavaFX application thread.
+	 * @param renderer the way the image is drawn
+	 * @return the pixels
+	 */
+	RenderedImage pixels(Renderer renderer) {
+		if (renderer == Renderer.SOFTWARE) {
+			return Rasterizer.rasterize(this);
+		}
 		SnapshotParameters sp = new SnapshotParameters();
 		sp.setFill(Color.TRANSPARENT);
+		WritableImage snapshot;
+		if (renderer == Renderer.CANVAS) {
+			Rect r = bounds(Util.identityTransform);
+			Canvas canvas = new Canvas(Math.ceil(r.width), Math.ceil(r.height));
+			GraphicsContext gc = canvas.getGraphicsContext2D();
+			gc.translate(-r.x, -r.y);
+			draw(gc);
+			snapshot = canvas.snapshot(sp, null);
+		} else {
+			snapshot = render().snapshot(sp, null);
+		}
+		return SwingFXUtils.fromFXImage(snapshot, null);
+	}
+	
+	/**
+	 * Save the image as an SVG file. Shapes are saved as vector graphics, 
+	 * bitmaps are embedded as png data.
+	 * @param fileName the name of the file
+	 * @return true if the image could successfully be saved
+	 */
+	public boolean saveSvg(String fileName) {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), StandardCharsets.UTF_8))) 
+		{
+			writeSvg(out);
+		} catch (IOException ex) {
+			System.err.println("Image.saveSvg:\n" + ex);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes the image as an SVG document. The elements are written while 
+	 * the image is traversed, so memory use does not depend on the number 
+	 * of elements.
+	 * @param out where to write the document to
+	 * @throws IOException if writing fails
+	 */
+	public void writeSvg(Appendable out) throws IOException {
+		Rect r = bounds(Util.identityTransform);
+		SvgWriter w = new SvgWriter(out);
+		w.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<svg xmlns=\"http://www.w3.org/2000/svg\"")
+				.attribute("width", r.width).attribute("height", r.height)
+				.attribute("viewBox", SvgWriter.number(r.x) + " " + SvgWriter.number(r.y) + " " + 
+						SvgWriter.number(r.width) + " " + SvgWriter.number(r.height))
+				.append(">\n");
+		svg(w);
+		w.append("</svg>\n");
+	}
+	
+	/**
+	 * Writes the pixels as a png file.
+	 * @param image the pixels
+	 * @param file the file
+	 * @return true if the file could successfully be written
+	 */
+	static boolean write(RenderedImage image, File file) {
 		try {
-			ImageIO.write(SwingFXUtils.fromFXImage(render().snapshot(sp, null), null), "png", file);
+			ImageIO.write(image, "png", file);
 		} catch (IOException ex) {
 			System.err.println("Image.save:\n" + ex);
 			return false;
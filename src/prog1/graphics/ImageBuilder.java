@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+/**
+ * Places many images into a single group. All coordinates refer to the same
+ * origin. For non-negative coordinates this is equivalent to a loop of
+ * {@code img = underlay("left", "top", x, y, img, image)}, but creates only
+ * one group, regardless of the number of placed images.
+ * <pre>
+ * {@code
+ * ImageBuilder b = canvasBuilder(800, 800);
+ * for (int y = 0; y < 800; y += 30) {
+ *     for (int x = 0; x < 800; x += 30) {
+ *         b.place(square(30, "red"), x, y);
+ *     }
+ * }
+ * Image i = b.build();
+ * }</pre>
+ * @author michaelrohs
+ */
+public class ImageBuilder {
+	private Group group = new Group();
+	private Child last; // the most recently placed image
+
+	/**
+	 * Create an empty builder.
+	 */
+	public ImageBuilder() {
+	}
+
+	/**
+	 * Create a builder with an empty (transparent) canvas of the given size
+	 * at position (0, 0).
+	 * @param width the width of the canvas
+	 * @param height the height of the canvas
+	 */
+	public ImageBuilder(double width, double height) {
+		place(Graphics.space(width, height), 0, 0);
+	}
+
+	/**
+	 * Place an image with its upper left corner at position (x, y). Images
+	 * placed later appear in front of images placed earlier.
+	 * @param image the image to place
+	 * @param x x-coordinate of the upper left corner of the image
+	 * @param y y-coordinate of the upper left corner of the image
+	 * @return this builder
+	 */
+	public ImageBuilder place(Image image, double x, double y) {
+		if (group == null) {
+			throw new IllegalStateException("build has already been called");
+		}
+		group.add(image, x, y);
+		last = group.get(group.count() - 1);
+		return this;
+	}
+
+	/**
+	 * Place an image to the right of the previously placed image, top-aligned.
+	 * @param image the image to place
+	 * @return this builder
+	 */
+	public ImageBuilder placeBeside(Image image) {
+		if (last == null) {
+			return place(image, 0, 0);
+		}
+		return place(image, last.x + last.width, last.y);
+	}
+
+	/**
+	 * Place an image below the previously placed image, left-aligned. The
+	 * previously placed image is above the new one, as in {@link Graphics#above}.
+	 * @param image the image to place
+	 * @return this builder
+	 */
+	public ImageBuilder placeAbove(Image image) {
+		if (last == null) {
+			return place(image, 0, 0);
+		}
+		return place(image, last.x, last.y + last.height);
+	}
+
+	/**
+	 * Returns the image consisting of all placed images. As with 
+	 * {@link Graphics#underlay(String, String, double, double, Image...)}, the 
+	 * images are moved such that the smallest x- and y-coordinates are 0. 
+	 * The builder cannot be used afterwards.
+	 * @return the image
+	 */
+	public Image build() {
+		if (group == null) {
+			throw new IllegalStateException("build has already been called");
+		}
+		Group g = group;
+		group = null;
+		last = null;
+		double x1 = Double.POSITIVE_INFINITY;
+		double y1 = Double.POSITIVE_INFINITY;
+		for (Child c : g.children) {
+			x1 = Math.min(x1, c.x);
+			y1 = Math.min(y1, c.y);
+		}
+		if (x1 != 0 || y1 != 0) {
+			for (Child c : g.children) {
+				c.x -= x1;
+				c.y -= y1;
+			}
+		}
+		return g;
+	}
+
+}
@@ -24,20 +24,13 @@ import javafx.scene.paint.Color;
 class ImagePolygon extends Group {
 
 	public ImagePolygon(Image image, double[] points, Color color, Pen pen) {
-		// todo: change to Rect r = Util.boundingBoxXY(points);
 		// bounding rectangle of polygon
-		double x1 = Double.POSITIVE_INFINITY;
-		double y1 = Double.POSITIVE_INFINITY;
-		double x2 = Double.NEGATIVE_INFINITY;
-		double y2 = Double.NEGATIVE_INFINITY;
-		for (int i = 0; i < points.length;) {
-			double x = points[i++];
-			double y = points[i++];
-			x1 = Math.min(x1, x);
-			y1 = Math.min(y1, y);
-			x2 = Math.max(x2, x);
-			y2 = Math.max(y2, y);
-		}
+		Extent e = new Extent();
+		e.addPoints(points);
+		double x1 = e.minX();
+		double y1 = e.minY();
+		double x2 = e.maxX();
+		double y2 = e.maxY();
 		// bounding rectangle of polygon and image
 		double minX = Math.min(0, x1);
 		double minY = Math.min(0, y1);
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import javafx.event.EventType;
+
+/**
+ * A binary log of the input of an application: mouse and key events, ticks, 
+ * and drawings, in the order in which they happened. The log starts with 
+ * the magic number "P1IL" and a version. Each record consists of a kind 
+ * byte and the time in seconds since the start of the recording as a 
+ * double, followed by data depending on the kind: for mouse events the 
+ * coordinates as doubles and the buttons and modifiers as a bit set byte, 
+ * for key events the key as modified UTF-8, for ticks the time passed to 
+ * the tick function as a double. Replaying the records in order calls the 
+ * functions of an application with the same arguments and in the same 
+ * order as during the recording.
+ * @author michaelrohs
+ */
+class InputLog {
+	private static final int MAGIC = 0x5031494c; // "P1IL"
+	private static final int VERSION = 1;
+
+	static final int TICK = 0;
+	static final int DRAW = 1;
+	static final int MOUSE_PRESSED = 2;
+	static final int MOUSE_RELEASED = 3;
+	static final int MOUSE_MOVED = 4;
+	static final int MOUSE_DRAGGED = 5;
+	static final int KEY_PRESSED = 6;
+	static final int KEY_RELEASED = 7;
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private InputLog() {}
+
+	/**
+	 * Returns the record kind of a JavaFX mouse event type.
+	 * @param type the event type
+	 * @return the kind, -1 for other types
+	 */
+	static int kind(EventType<?> type) {
+		if (type == javafx.scene.input.MouseEvent.MOUSE_PRESSED) return MOUSE_PRESSED;
+		if (type == javafx.scene.input.MouseEvent.MOUSE_RELEASED) return MOUSE_RELEASED;
+		if (type == javafx.scene.input.MouseEvent.MOUSE_MOVED) return MOUSE_MOVED;
+		if (type == javafx.scene.input.MouseEvent.MOUSE_DRAGGED) return MOUSE_DRAGGED;
+		return -1;
+	}
+
+	/**
+	 * Writes records to a file.
+	 */
+	static class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final long start = System.nanoTime();
+
+		Writer(String fileName) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+		}
+
+		void tick(double time) throws IOException {
+			header(TICK);
+			out.writeDouble(time);
+		}
+
+		void draw() throws IOException {
+			header(DRAW);
+		}
+
+		void mouse(int kind, MouseEvent e) throws IOException {
+			header(kind);
+			out.writeDouble(e.x);
+			out.writeDouble(e.y);
+			int flags = (e.primaryButtonDown ? 1 : 0) | (e.secondaryButtonDown ? 2 : 0) | 
+					(e.middleButtonDown ? 4 : 0) | (e.shiftDown ? 8 : 0) | 
+					(e.controlDown ? 16 : 0) | (e.altDown ? 32 : 0) | (e.metaDown ? 64 : 0);
+			out.writeByte(flags);
+		}
+
+		void key(boolean pressed, String key) throws IOException {
+			header(pressed ? KEY_PRESSED : KEY_RELEASED);
+			out.writeUTF(key);
+		}
+
+		private void header(int kind) throws IOException {
+			out.writeByte(kind);
+			out.writeDouble((System.nanoTime() - start) * 1e-9);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads records from a file, one at a time. After {@link #next()} the 
+	 * fields describe the current record.
+	 */
+	static class Reader implements Closeable {
+		private final DataInputStream in;
+		int kind;
+		double time; // seconds since the start of the recording
+		double tickTime; // for TICK
+		MouseEvent mouseEvent; // for mouse records
+		String key; // for key records
+
+		Reader(String fileName) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				in.close();
+				throw new IOException("not an input log: " + fileName);
+			}
+		}
+
+		/**
+		 * Reads the next record.
+		 * @return false at the end of the log
+		 * @throws IOException if reading fails
+		 */
+		boolean next() throws IOException {
+			int k = in.read();
+			if (k < 0) {
+				return false;
+			}
+			try {
+				kind = k;
+				time = in.readDouble();
+				switch (kind) {
+					case TICK:
+						tickTime = in.readDouble();
+						break;
+					case DRAW:
+						break;
+					case MOUSE_PRESSED: case MOUSE_RELEASED: case MOUSE_MOVED: case MOUSE_DRAGGED:
+						double x = in.readDouble();
+						double y = in.readDouble();
+						int f = in.readByte();
+						mouseEvent = new MouseEvent(x, y, (f & 1) != 0, (f & 2) != 0, (f & 4) != 0, 
+								(f & 8) != 0, (f & 16) != 0, (f & 32) != 0, (f & 64) != 0);
+						break;
+					case KEY_PRESSED: case KEY_RELEASED:
+						key = in.readUTF();
+						break;
+					default:
+						throw new IOException("unknown record kind: " + kind);
+				}
+			} catch (EOFException ex) {
+				return false; // incomplete last record, e.g., after a crash
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+}
@@ -15,6 +15,7 @@
  */
 package prog1.graphics;
 
+
 /**
  * A line.
  * @author michaelrohs
@@ -50,4 +51,27 @@ class Line extends Shape {
 		return render(new javafx.scene.shape.Line(x1, y1, x2, y2));
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.moveTo(x1, y1);
+		p.lineTo(x2, y2);
+	}
+
+	@Override
+	protected boolean isClosed() {
+		return false;
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, false, x1, y1, x2, y2);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		if (!sameSize(image)) return false;
+		Line l = (Line) image;
+		return l.x1 == x1 && l.y1 == y1 && l.x2 == x2 && l.y2 == y2;
+	}
+
 }
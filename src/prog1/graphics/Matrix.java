@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Transform;
+
+/**
+ * A mutable affine transformation for internal computations. Unlike 
+ * JavaFX transforms it transforms points without creating objects: 
+ * coordinate arrays are transformed in place, and {@link Extent} 
+ * accumulates transformed points into a bounding box. The matrix is
+ * <pre>
+ * | mxx mxy tx |
+ * | myx myy ty |
+ * </pre>
+ * @author michaelrohs
+ */
+class Matrix {
+	double mxx = 1.0, mxy, tx;
+	double myx, myy = 1.0, ty;
+
+	/**
+	 * Create an identity matrix.
+	 */
+	Matrix() {
+	}
+
+	/**
+	 * Create a matrix with the given coefficients.
+	 */
+	Matrix(double mxx, double mxy, double tx, double myx, double myy, double ty) {
+		set(mxx, mxy, tx, myx, myy, ty);
+	}
+
+	/**
+	 * Create a matrix with the coefficients of the JavaFX transform.
+	 * @param t the transform
+	 */
+	Matrix(Transform t) {
+		set(t.getMxx(), t.getMxy(), t.getTx(), t.getMyx(), t.getMyy(), t.getTy());
+	}
+
+	/**
+	 * Sets the coefficients.
+	 */
+	void set(double mxx, double mxy, double tx, double myx, double myy, double ty) {
+		this.mxx = mxx; this.mxy = mxy; this.tx = tx;
+		this.myx = myx; this.myy = myy; this.ty = ty;
+	}
+
+	/**
+	 * Appends the given transformation, i.e., it is applied to points 
+	 * before this one.
+	 */
+	void concatenate(double mxx, double mxy, double tx, double myx, double myy, double ty) {
+		double xx = this.mxx * mxx + this.mxy * myx;
+		double xy = this.mxx * mxy + this.mxy * myy;
+		double yx = this.myx * mxx + this.myy * myx;
+		double yy = this.myx * mxy + this.myy * myy;
+		this.tx += this.mxx * tx + this.mxy * ty;
+		this.ty += this.myx * tx + this.myy * ty;
+		this.mxx = xx; this.mxy = xy;
+		this.myx = yx; this.myy = yy;
+	}
+
+	/**
+	 * Checks whether this matrix only translates.
+	 * @return true if neither rotated, scaled, nor sheared
+	 */
+	boolean isTranslation() {
+		return mxx == 1.0 && mxy == 0.0 && myx == 0.0 && myy == 1.0;
+	}
+
+	/**
+	 * Transforms the points in place.
+	 * @param ps points as alternating x and y coordinates
+	 */
+	void transform(double[] ps) {
+		transform(ps, ps);
+	}
+
+	/**
+	 * Transforms the points into the destination array, which may be the 
+	 * source array.
+	 * @param src points as alternating x and y coordinates
+	 * @param dst transformed points, at least as long as src
+	 */
+	void transform(double[] src, double[] dst) {
+		for (int i = 0; i < src.length; i += 2) {
+			double x = src[i];
+			double y = src[i + 1];
+			dst[i] = mxx * x + mxy * y + tx;
+			dst[i + 1] = myx * x + myy * y + ty;
+		}
+	}
+
+	/**
+	 * Returns a JavaFX transform with the coefficients of this matrix.
+	 * @return the transform
+	 */
+	Transform toTransform() {
+		return new Affine(mxx, mxy, tx, myx, myy, ty);
+	}
+
+}
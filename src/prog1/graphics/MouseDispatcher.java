@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+/**
+ * Delivers the mouse events of a scene to the mouse functions of the images 
+ * of the drawn frame. Instead of an event handler on each JavaFX node, one 
+ * handler on the scene looks up the image under the mouse in a 
+ * {@link HitIndex}. As in JavaFX, drag and release events go to the image 
+ * on which the button was pressed, and events that an image does not handle 
+ * go to the enclosing images.
+ * @author michaelrohs
+ */
+class MouseDispatcher {
+	private Image frame; // the most recently drawn frame
+	private HitIndex index; // built for the frame on the first event
+	private boolean indexed; // whether index is up to date
+	private HitIndex.Target pressed; // receives drag and release events
+
+	/**
+	 * Sets the frame that is currently shown.
+	 * @param frame the image, with its origin at the origin of the scene
+	 */
+	void setFrame(Image frame) {
+		this.frame = frame;
+		index = null;
+		indexed = false;
+	}
+
+	/**
+	 * Calls the mouse function of the image that is the target of the event.
+	 * @param e the JavaFX mouse event
+	 * @return true if a mouse function has been called
+	 */
+	boolean dispatch(javafx.scene.input.MouseEvent e) {
+		int kind = InputLog.kind(e.getEventType());
+		return kind >= 0 && dispatch(kind, new MouseEvent(e));
+	}
+
+	/**
+	 * Calls the mouse function of the image that is the target of the event.
+	 * Does not need JavaFX.
+	 * @param kind the kind of the event, one of {@link InputLog#MOUSE_PRESSED}, 
+	 * {@link InputLog#MOUSE_RELEASED}, {@link InputLog#MOUSE_MOVED}, and 
+	 * {@link InputLog#MOUSE_DRAGGED}
+	 * @param event the mouse event, in scene coordinates
+	 * @return true if a mouse function has been called
+	 */
+	boolean dispatch(int kind, MouseEvent event) {
+		HitIndex.Target target;
+		if (kind == InputLog.MOUSE_PRESSED) {
+			target = find(event.x, event.y);
+			pressed = target;
+		} else if (kind == InputLog.MOUSE_MOVED) {
+			target = find(event.x, event.y);
+		} else if (kind == InputLog.MOUSE_DRAGGED) {
+			target = pressed;
+		} else if (kind == InputLog.MOUSE_RELEASED) {
+			target = pressed;
+			pressed = null;
+		} else {
+			return false;
+		}
+		for (HitIndex.Target t = target; t != null; t = t.parent) {
+			if (t.image.handleMouse(kind, event)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private HitIndex.Target find(double x, double y) {
+		if (!indexed) {
+			index = frame == null ? null : HitIndex.build(frame);
+			indexed = true;
+		}
+		return index == null ? null : index.find(x, y);
+	}
+
+}
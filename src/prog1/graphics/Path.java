@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Receives the outline of a shape. Allows the same outline to be drawn 
+ * onto a JavaFX canvas and to be rasterized without JavaFX.
+ * @author michaelrohs
+ */
+interface Path {
+
+	void moveTo(double x, double y);
+
+	void lineTo(double x, double y);
+
+	/**
+	 * Appends an elliptic arc, connected by a line to the current point.
+	 * Angles are in degrees, counterclockwise, as for JavaFX arcs.
+	 * @param cx x-coordinate of the center
+	 * @param cy y-coordinate of the center
+	 * @param rx radius in x-direction
+	 * @param ry radius in y-direction
+	 * @param startAngle start angle
+	 * @param length angular extent
+	 */
+	void arc(double cx, double cy, double rx, double ry, double startAngle, double length);
+
+	/**
+	 * Appends a closed rectangle.
+	 * @param x x-coordinate of the upper left corner
+	 * @param y y-coordinate of the upper left corner
+	 * @param width width
+	 * @param height height
+	 */
+	void rect(double x, double y, double width, double height);
+
+	void closePath();
+
+	/**
+	 * Appends a polygon or polyline.
+	 * @param closed true for a polygon, false for a polyline
+	 * @param ps points as alternating x and y coordinates
+	 */
+	default void polygon(boolean closed, double... ps) {
+		if (ps.length < 2) return;
+		moveTo(ps[0], ps[1]);
+		for (int i = 2; i < ps.length; i += 2) {
+			lineTo(ps[i], ps[i + 1]);
+		}
+		if (closed) {
+			closePath();
+		}
+	}
+
+	/**
+	 * Returns a path that appends to the current path of a graphics context.
+	 * @param gc the graphics context
+	 * @return the path
+	 */
+	static Path of(GraphicsContext gc) {
+		return new Path() {
+			@Override
+			public void moveTo(double x, double y) {
+				gc.moveTo(x, y);
+			}
+
+			@Override
+			public void lineTo(double x, double y) {
+				gc.lineTo(x, y);
+			}
+
+			@Override
+			public void arc(double cx, double cy, double rx, double ry, double startAngle, double length) {
+				gc.arc(cx, cy, rx, ry, startAngle, length);
+			}
+
+			@Override
+			public void rect(double x, double y, double width, double height) {
+				gc.rect(x, y, width, height);
+			}
+
+			@Override
+			public void closePath() {
+				gc.closePath();
+			}
+		};
+	}
+
+	/**
+	 * Returns a path that appends to a Java2D path.
+	 * @param p the Java2D path
+	 * @return the path
+	 */
+	static Path of(Path2D p) {
+		return new Path() {
+			@Override
+			public void moveTo(double x, double y) {
+				p.moveTo(x, y);
+			}
+
+			@Override
+			public void lineTo(double x, double y) {
+				p.lineTo(x, y);
+			}
+
+			@Override
+			public void arc(double cx, double cy, double rx, double ry, double startAngle, double length) {
+				p.append(new Arc2D.Double(cx - rx, cy - ry, 2 * rx, 2 * ry, 
+						startAngle, length, Arc2D.OPEN), p.getCurrentPoint() != null);
+			}
+
+			@Override
+			public void rect(double x, double y, double width, double height) {
+				p.append(new Rectangle2D.Double(x, y, width, height), false);
+			}
+
+			@Override
+			public void closePath() {
+				p.closePath();
+			}
+		};
+	}
+
+}
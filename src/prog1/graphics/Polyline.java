@@ -15,6 +15,7 @@
  */
 package prog1.graphics;
 
+import java.util.Arrays;
 import javafx.scene.paint.Color;
 
 /**
@@ -22,7 +23,7 @@ import javafx.scene.paint.Color;
  * @author michaelrohs
  */
 class Polyline extends Shape {
-	private final Double[] points;
+	private final double[] points;
 
 	public Polyline(double[] points, Color color, Pen pen) {
 		super(0, 0, color, pen);
@@ -44,7 +45,7 @@ class Polyline extends Shape {
 		}
 		this.width = x2 - x1;
 		this.height = y2 - y1;
-		this.points = new Double[points.length];
+		this.points = new double[points.length];
 		for (int i = 0; i < points.length; ) {
 			this.points[i] = points[i] - x1;
 			i++;
@@ -56,8 +57,28 @@ class Polyline extends Shape {
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.shape.Polyline polyline = new javafx.scene.shape.Polyline();
-		polyline.getPoints().setAll(points);
+		setPoints(polyline.getPoints(), points);
 		return render(polyline);
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.polygon(false, points);
+	}
+
+	@Override
+	protected boolean isClosed() {
+		return false;
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, false, points);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image) && Arrays.equals(((Polyline) image).points, points);
+	}
+
 }
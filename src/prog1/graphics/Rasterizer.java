@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+/**
+ * Rasterizes images into ARGB pixel buffers without JavaFX. Works on
+ * servers without a display (e.g., with {@code -Djava.awt.headless=true}),
+ * since only Java2D is used. Each pixel is an int of the form 0xAARRGGBB,
+ * not premultiplied, pixels are stored row by row. Large buffers are split 
+ * into tiles, which are rasterized in parallel. Each tile only draws the 
+ * parts of the image that overlap it.
+ * <pre>
+ * {@code
+ * Image i = circle(50, "red");
+ * int[] pixels = Rasterizer.rasterize(i, 100, 100);
+ * }</pre>
+ * @author michaelrohs
+ */
+public class Rasterizer {
+	/**
+	 * Width and height of a tile in pixels.
+	 */
+	private static final int TILE_SIZE = 256;
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private Rasterizer() {}
+
+	/**
+	 * Rasterizes the image with its origin at the upper left corner of a
+	 * transparent buffer.
+	 * @param image the image to rasterize
+	 * @param width the width of the buffer in pixels
+	 * @param height the height of the buffer in pixels
+	 * @return the pixels
+	 */
+	public static int[] rasterize(Image image, int width, int height) {
+		int[] argb = new int[width * height];
+		rasterize(image, argb, width, height);
+		return argb;
+	}
+
+	/**
+	 * Rasterizes the image with its origin at the upper left corner of the
+	 * given buffer. The image is drawn over the existing pixels.
+	 * @param image the image to rasterize
+	 * @param argb the pixels, at least width * height
+	 * @param width the width of the buffer in pixels
+	 * @param height the height of the buffer in pixels
+	 */
+	public static void rasterize(Image image, int[] argb, int width, int height) {
+		rasterize(image, argb, width, height, 0, 0);
+	}
+
+	/**
+	 * Rasterizes the image into a buffered image of the size of the
+	 * bounding box of the image.
+	 * @param image the image to rasterize
+	 * @return the buffered image
+	 */
+	public static BufferedImage rasterize(Image image) {
+		Rect r = image.bounds(Util.identityTransform);
+		int w = Math.max(1, (int) Math.ceil(r.width));
+		int h = Math.max(1, (int) Math.ceil(r.height));
+		BufferedImage b = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		int[] argb = ((DataBufferInt) b.getRaster().getDataBuffer()).getData();
+		rasterize(image, argb, w, h, r.x, r.y);
+		return b;
+	}
+
+	/**
+	 * Rasterizes the image such that point (x, y) of the image is at the 
+	 * upper left corner of the buffer. If the buffer is larger than a tile 
+	 * the tiles are rasterized in parallel.
+	 * @param image the image to rasterize
+	 * @param argb the pixels, at least width * height
+	 * @param width the width of the buffer in pixels
+	 * @param height the height of the buffer in pixels
+	 * @param x x-coordinate of the image at the left border of the buffer
+	 * @param y y-coordinate of the image at the top border of the buffer
+	 */
+	private static void rasterize(Image image, int[] argb, int width, int height, double x, double y) {
+		image.prepare();
+		int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		if (columns * rows <= 1 || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+			Graphics2D g = graphics(wrap(argb, width, height));
+			g.clip(new Rectangle(0, 0, width, height));
+			g.translate(-x, -y);
+			image.draw(g);
+			g.dispose();
+		} else {
+			ForkJoinPool.commonPool().invoke(
+					new TileTask(image, argb, width, height, x, y, columns, 0, columns * rows));
+		}
+	}
+
+	/**
+	 * Rasterizes a range of tiles, by splitting the range in half until a 
+	 * single tile remains. Never serialized.
+	 */
+	@SuppressWarnings("serial")
+	private static class TileTask extends RecursiveAction {
+		private final Image image;
+		private final int[] argb;
+		private final int width, height;
+		private final double x, y;
+		private final int columns;
+		private final int from, to; // tile indices, row by row, to exclusive
+
+		TileTask(Image image, int[] argb, int width, int height, double x, double y, 
+				int columns, int from, int to) 
+		{
+			this.image = image;
+			this.argb = argb;
+			this.width = width;
+			this.height = height;
+			this.x = x;
+			this.y = y;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) / 2;
+				invokeAll(new TileTask(image, argb, width, height, x, y, columns, from, mid), 
+						new TileTask(image, argb, width, height, x, y, columns, mid, to));
+				return;
+			}
+			int tx = (from % columns) * TILE_SIZE;
+			int ty = (from / columns) * TILE_SIZE;
+			int tw = Math.min(TILE_SIZE, width - tx);
+			int th = Math.min(TILE_SIZE, height - ty);
+			int[] tile = new int[tw * th];
+			for (int row = 0; row < th; row++) {
+				System.arraycopy(argb, (ty + row) * width + tx, tile, row * tw, tw);
+			}
+			Graphics2D g = graphics(wrap(tile, tw, th));
+			g.clip(new Rectangle(0, 0, tw, th));
+			g.translate(-x - tx, -y - ty);
+			image.draw(g);
+			g.dispose();
+			for (int row = 0; row < th; row++) {
+				System.arraycopy(tile, row * tw, argb, (ty + row) * width + tx, tw);
+			}
+		}
+	}
+
+	/**
+	 * Returns a buffered image that uses the given pixels.
+	 * @param argb the pixels, at least width * height
+	 * @param width the width in pixels
+	 * @param height the height in pixels
+	 * @return the buffered image
+	 */
+	static BufferedImage wrap(int[] argb, int width, int height) {
+		DirectColorModel cm = (DirectColorModel) ColorModel.getRGBdefault();
+		WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(argb, argb.length),
+				width, height, width, cm.getMasks(), null);
+		return new BufferedImage(cm, raster, false, null);
+	}
+
+	/**
+	 * Returns anti-aliased Java2D graphics for the buffered image.
+	 * @param b the buffered image
+	 * @return the graphics
+	 */
+	static Graphics2D graphics(BufferedImage b) {
+		Graphics2D g = b.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		return g;
+	}
+
+	/**
+	 * Converts a JavaFX color to a Java2D color.
+	 * @param c the JavaFX color
+	 * @return the Java2D color
+	 */
+	static java.awt.Color color(Color c) {
+		return new java.awt.Color((float) c.getRed(), (float) c.getGreen(),
+				(float) c.getBlue(), (float) c.getOpacity());
+	}
+
+	/**
+	 * Converts the pen to a Java2D stroke.
+	 * @param pen the pen
+	 * @param width the stroke width
+	 * @return the Java2D stroke
+	 */
+	static BasicStroke stroke(Pen pen, double width) {
+		int cap = pen.cap == StrokeLineCap.BUTT ? BasicStroke.CAP_BUTT :
+				pen.cap == StrokeLineCap.ROUND ? BasicStroke.CAP_ROUND : BasicStroke.CAP_SQUARE;
+		int join = pen.join == StrokeLineJoin.BEVEL ? BasicStroke.JOIN_BEVEL :
+				pen.join == StrokeLineJoin.ROUND ? BasicStroke.JOIN_ROUND : BasicStroke.JOIN_MITER;
+		return new BasicStroke((float) width, cap, join, 10.0f);
+	}
+
+}
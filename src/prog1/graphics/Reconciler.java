@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.collections.ObservableList;
+
+/**
+ * Keeps a JavaFX scene graph in sync with a sequence of images. Each call
+ * of {@link #update(Image)} compares the new image with the previous one
+ * and only creates JavaFX nodes for the parts that changed. Nodes of
+ * unchanged images are reused and only moved. Nodes of shapes with the
+ * same geometry are reused and only get new colors. Groups that cannot be 
+ * flattened, e.g., rotated or scaled ones, keep their JavaFX group, and 
+ * their children are compared in the same way.
+ * @author michaelrohs
+ */
+class Reconciler {
+
+	/**
+	 * An image at its position in the flattened image tree, together with
+	 * the JavaFX node that currently represents it.
+	 */
+	private static class Entry {
+		final Child child;
+		final double dx, dy;
+		javafx.scene.Node node;
+		List<Entry> children; // entries of the JavaFX group of a plain group, null otherwise
+
+		Entry(Child child, double dx, double dy) {
+			this.child = child;
+			this.dx = dx;
+			this.dy = dy;
+		}
+	}
+
+	private final javafx.scene.Group root = new javafx.scene.Group();
+	private List<Entry> entries = new ArrayList<>();
+
+	/**
+	 * Returns the JavaFX node that is kept in sync with the images.
+	 * @return the root node
+	 */
+	javafx.scene.Node node() {
+		return root;
+	}
+
+	/**
+	 * Updates the JavaFX nodes to show the given image.
+	 * @param image the image to show
+	 */
+	void update(Image image) {
+		Child c = new Child(image, 0, 0);
+		List<Entry> next;
+		if (Group.isMergeable(c)) {
+			next = unmerged((Group) image);
+		} else {
+			next = new ArrayList<>(1);
+			next.add(new Entry(c, 0, 0));
+		}
+		update(entries, next, root.getChildren());
+		entries = next;
+	}
+
+	/**
+	 * Updates the JavaFX nodes of the previous entries to show the next 
+	 * entries, matched by index.
+	 * @param previous the entries of the previous frame
+	 * @param next the entries of the next frame
+	 * @param nodes the JavaFX nodes of the previous entries, updated in place
+	 */
+	private static void update(List<Entry> previous, List<Entry> next, ObservableList<javafx.scene.Node> nodes) {
+		int n = next.size();
+		int m = Math.min(n, previous.size());
+		for (int i = 0; i < n; i++) {
+			Entry e = next.get(i);
+			javafx.scene.Node node = i < m ? reuse(previous.get(i), e) : null;
+			if (node == null) {
+				e.node = e.child.render(e.dx, e.dy);
+				attach(e);
+				if (i < nodes.size()) {
+					nodes.set(i, e.node);
+				} else {
+					nodes.add(e.node);
+				}
+			} else {
+				e.node = node;
+				e.child.place(node, e.dx, e.dy);
+			}
+		}
+		if (nodes.size() > n) {
+			nodes.remove(n, nodes.size());
+		}
+	}
+
+	/**
+	 * Returns the entries of the children of a group that are not merged 
+	 * into it, in the order in which {@link Group#render()} renders them.
+	 * @param g the group
+	 * @return the entries, without nodes
+	 */
+	private static List<Entry> unmerged(Group g) {
+		List<Entry> list = new ArrayList<>();
+		g.visitUnmerged((d, dx, dy) -> list.add(new Entry(d, dx, dy)), 0, 0);
+		return list;
+	}
+
+	/**
+	 * Checks whether the image is rendered as a JavaFX group with one node 
+	 * per unmerged child.
+	 * @param image the image
+	 * @return true for a plain group
+	 */
+	private static boolean isPlainGroup(Image image) {
+		return image.getClass() == Group.class;
+	}
+
+	/**
+	 * Creates the entries of the children of a newly rendered plain group, 
+	 * so that its JavaFX group can be updated in the next frame.
+	 * @param e the entry with its newly rendered node
+	 */
+	private static void attach(Entry e) {
+		if (!isPlainGroup(e.child.image) || !(e.node instanceof javafx.scene.Group)) {
+			return;
+		}
+		List<Entry> children = unmerged((Group) e.child.image);
+		List<javafx.scene.Node> nodes = ((javafx.scene.Group) e.node).getChildren();
+		if (nodes.size() != children.size()) {
+			return;
+		}
+		for (int i = 0; i < children.size(); i++) {
+			Entry d = children.get(i);
+			d.node = nodes.get(i);
+			attach(d);
+		}
+		e.children = children;
+	}
+
+	/**
+	 * Tries to reuse the node of the previous entry for the next entry. The 
+	 * JavaFX group of a plain group is reused and its children are updated.
+	 * @param previous the entry of the previous frame
+	 * @param next the entry of the next frame
+	 * @return the node, null if it cannot be reused
+	 */
+	private static javafx.scene.Node reuse(Entry previous, Entry next) {
+		Image p = previous.child.image;
+		Image n = next.child.image;
+		if (p == n) {
+			next.children = previous.children;
+			return previous.node;
+		}
+		if (previous.children != null && isPlainGroup(n)) {
+			next.children = unmerged((Group) n);
+			update(previous.children, next.children, ((javafx.scene.Group) previous.node).getChildren());
+			return previous.node;
+		}
+		if (!n.sameGeometry(p)) {
+			return null;
+		}
+		if (n instanceof Shape) {
+			((Shape) n).style((javafx.scene.shape.Shape) previous.node);
+		}
+		return previous.node;
+	}
+
+}
@@ -32,4 +32,19 @@ class Rectangle extends Shape {
 		return render(new javafx.scene.shape.Rectangle(width, height));
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.rect(0, 0, width, height);
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsRect(e);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image);
+	}
+
 }
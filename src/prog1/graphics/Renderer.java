@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+/**
+ * The ways in which images can be drawn. With each of them, the mouse 
+ * functions of images are called for the image under the mouse, which is 
+ * found from the geometry of the drawn frame rather than from JavaFX nodes.
+ * @author michaelrohs
+ */
+public enum Renderer {
+	/**
+	 * Each shape becomes a JavaFX node.
+	 */
+	SCENE_GRAPH,
+	/**
+	 * All shapes are drawn onto a single JavaFX canvas. Much cheaper for 
+	 * images that consist of many shapes.
+	 */
+	CANVAS,
+	/**
+	 * All shapes are rasterized by {@link Rasterizer} without JavaFX. Works 
+	 * without a display when saving images.
+	 */
+	SOFTWARE
+}
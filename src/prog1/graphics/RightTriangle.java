@@ -27,14 +27,28 @@ class RightTriangle extends Shape {
 		super(width, height, color, pen);
 	}
 	
+	private double[] points() {
+		return new double[] {
+			0.0, 0.0, 
+			0.0, height,
+			width, height };
+	}
+	
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.shape.Polygon polygon = new javafx.scene.shape.Polygon();
-		polygon.getPoints().addAll(new Double[] {
-			0.0, 0.0, 
-			0.0, height,
-			width, height });
+		setPoints(polygon.getPoints(), points());
 		return render(polygon);
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.polygon(true, points());
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, true, points());
+	}
+
 }
@@ -15,13 +15,28 @@
  */
 package prog1.graphics;
 
+import java.awt.Graphics2D;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import javafx.collections.ObservableList;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.FillRule;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+import javafx.scene.shape.StrokeType;
 
 /**
  * An abstract shape.
  * @author michaelrohs
  */
 abstract class Shape extends Image {
+	/**
+	 * The JavaFX default miter limit (not changed by {@link #render(javafx.scene.shape.Shape)}).
+	 */
+	private static final double MITER_LIMIT = 10.0;
+
 	private final Color color;
 	private final Pen pen;
 
@@ -34,7 +49,340 @@ abstract class Shape extends Image {
 	@Override
 	protected abstract javafx.scene.Node render();
 
-	protected javafx.scene.Node render(javafx.scene.shape.Shape s) {
+	/**
+	 * The distance by which the pen widens the outline of this shape.
+	 * @return the stroke padding, 0 if there is no pen
+	 */
+	protected double strokePadding() {
+		if (pen == null || pen.type == StrokeType.INSIDE) return 0;
+		return pen.type == StrokeType.OUTSIDE ? pen.width : pen.width / 2.0;
+	}
+
+	/**
+	 * Adds the bounding box of the rectangle (0, 0, width, height), 
+	 * including the stroke, to the extent.
+	 * @param e the extent to add to
+	 */
+	void addBoundsRect(Extent e) {
+		double p = strokePadding();
+		e.add(-p, -p);
+		e.add(width + p, -p);
+		e.add(width + p, height + p);
+		e.add(-p, height + p);
+	}
+
+	/**
+	 * Adds the bounding box of a polygon or polyline, including the stroke, 
+	 * to the extent. The stroke consists of the edges widened by the pen, 
+	 * plus disks only for round joins and caps, miter tips within the miter 
+	 * limit, and the corners of square caps.
+	 * @param e the extent to add to
+	 * @param closed true for a polygon, false for a polyline
+	 * @param ps points as alternating x and y coordinates
+	 */
+	void addBoundsXY(Extent e, boolean closed, double... ps) {
+		double p = strokePadding();
+		int n = ps.length;
+		e.addPoints(ps);
+		if (p <= 0 || n < 2) {
+			return;
+		}
+		boolean hasEdge = false;
+		int edges = closed ? n : n - 2;
+		for (int i = 0; i < edges; i += 2) {
+			int j = (i + 2) % n;
+			if (e.addWidenedEdge(ps[i], ps[i + 1], ps[j], ps[j + 1], p)) {
+				hasEdge = true;
+			}
+		}
+		if (!hasEdge) { // all points coincide, only caps are drawn
+			if (!closed && pen.cap != StrokeLineCap.BUTT) {
+				double r = pen.cap == StrokeLineCap.SQUARE ? p * Math.sqrt(2) : p;
+				e.addDisk(ps[0], ps[1], r);
+			}
+			return;
+		}
+		int first = closed ? 0 : 2;
+		int last = closed ? n : n - 2;
+		for (int i = first; i < last; i += 2) {
+			int prev = (i - 2 + n) % n;
+			int next = (i + 2) % n;
+			if (pen.join == StrokeLineJoin.ROUND) {
+				e.addDisk(ps[i], ps[i + 1], p);
+			} else if (pen.join == StrokeLineJoin.MITER) {
+				e.addMiter(ps[i], ps[i + 1], 
+						ps[i] - ps[prev], ps[i + 1] - ps[prev + 1], 
+						ps[next] - ps[i], ps[next + 1] - ps[i + 1], 
+						p, MITER_LIMIT);
+			}
+		}
+		if (!closed && n >= 4) {
+			if (pen.cap == StrokeLineCap.ROUND) {
+				e.addDisk(ps[0], ps[1], p);
+				e.addDisk(ps[n - 2], ps[n - 1], p);
+			} else if (pen.cap == StrokeLineCap.SQUARE) {
+				e.addSquareCap(ps[0], ps[1], ps[0] - ps[2], ps[1] - ps[3], p);
+				e.addSquareCap(ps[n - 2], ps[n - 1], ps[n - 2] - ps[n - 4], ps[n - 1] - ps[n - 3], p);
+			}
+		}
+	}
+
+	/**
+	 * Moves the points such that their bounding box starts at the origin 
+	 * and sets the size of this shape to the size of the bounding box.
+	 * @param ps points as alternating x and y coordinates, moved in place
+	 */
+	protected void fitPoints(double[] ps) {
+		Extent e = new Extent();
+		e.addPoints(ps);
+		new Matrix(1, 0, -e.minX(), 0, 1, -e.minY()).transform(ps);
+		width = e.maxX() - e.minX();
+		height = e.maxY() - e.minY();
+	}
+
+	/**
+	 * Sets the points of a JavaFX polygon or polyline. JavaFX stores the 
+	 * points as boxed doubles, so they are only boxed when a node is created.
+	 * @param list the points of the JavaFX shape
+	 * @param ps points as alternating x and y coordinates
+	 */
+	protected static void setPoints(ObservableList<Double> list, double[] ps) {
+		Double[] boxed = new Double[ps.length];
+		for (int i = 0; i < ps.length; i++) {
+			boxed[i] = ps[i];
+		}
+		list.setAll(boxed);
+	}
+
+	/**
+	 * Adds the tip of a mitered join of the pen to the extent.
+	 * @param e the extent to add to
+	 * @param x x-coordinate of the vertex
+	 * @param y y-coordinate of the vertex
+	 * @param dx1 x-direction of the incoming edge
+	 * @param dy1 y-direction of the incoming edge
+	 * @param dx2 x-direction of the outgoing edge
+	 * @param dy2 y-direction of the outgoing edge
+	 */
+	protected void addMiter(Extent e, double x, double y, double dx1, double dy1, double dx2, double dy2) {
+		if (pen != null && pen.join == StrokeLineJoin.MITER) {
+			e.addMiter(x, y, dx1, dy1, dx2, dy2, strokePadding(), MITER_LIMIT);
+		}
+	}
+
+	/**
+	 * Appends the outline of this shape to the given path. Will be 
+	 * overridden for each specific subtype.
+	 * @param p the path
+	 */
+	protected abstract void path(Path p);
+	
+	/**
+	 * Checks whether the outline of this shape is closed. Inside and outside 
+	 * strokes only apply to closed outlines, open outlines are always 
+	 * stroked centered.
+	 * @return true if the outline is closed
+	 */
+	protected boolean isClosed() {
+		return true;
+	}
+
+	@Override
+	protected void draw(GraphicsContext gc) {
+		gc.beginPath();
+		path(Path.of(gc));
+		if (fillStyle(gc)) {
+			gc.fill();
+		}
+		if (strokeStyle(gc)) {
+			stroke(gc);
+		}
+	}
+	
+	/**
+	 * Sets the fill of the graphics context to the color of this shape.
+	 * @param gc the graphics context
+	 * @return true if the shape has a color
+	 */
+	protected boolean fillStyle(GraphicsContext gc) {
+		if (color == null) return false;
+		gc.setFill(color);
+		return true;
+	}
+	
+	/**
+	 * Sets the stroke attributes of the graphics context to the pen of this 
+	 * shape.
+	 * @param gc the graphics context
+	 * @return true if the shape has a pen
+	 */
+	protected boolean strokeStyle(GraphicsContext gc) {
+		if (pen == null) return false;
+		gc.setStroke(pen.color);
+		gc.setLineWidth(pen.width);
+		gc.setLineCap(pen.cap);
+		gc.setLineJoin(pen.join);
+		return true;
+	}
+	
+	/**
+	 * Strokes the current path of the graphics context, whose stroke 
+	 * attributes have been set by {@link #strokeStyle(GraphicsContext)}. 
+	 * The graphics context only supports centered strokes, inside and 
+	 * outside strokes are drawn with twice the width and clipped to the 
+	 * inside or outside of the outline.
+	 * @param gc the graphics context
+	 */
+	protected void stroke(GraphicsContext gc) {
+		if (pen.type == StrokeType.CENTERED || !isClosed()) {
+			gc.stroke();
+			return;
+		}
+		gc.save();
+		if (pen.type == StrokeType.OUTSIDE) {
+			Rect r = bounds(Util.identityTransform);
+			gc.beginPath();
+			gc.rect(r.x - 1, r.y - 1, r.width + 2, r.height + 2);
+			path(Path.of(gc));
+			gc.setFillRule(FillRule.EVEN_ODD);
+		}
+		gc.clip();
+		gc.beginPath();
+		path(Path.of(gc));
+		gc.setLineWidth(2 * pen.width);
+		gc.stroke();
+		gc.restore();
+	}
+
+	/**
+	 * Checks whether the point lies on the filled interior or on the 
+	 * stroke of this shape.
+	 * @param x x-coordinate in image coordinates
+	 * @param y y-coordinate in image coordinates
+	 * @return true if the point lies on this shape
+	 */
+	@Override
+	boolean contains(double x, double y) {
+		Path2D.Double outline = new Path2D.Double();
+		path(Path.of(outline));
+		if (color != null && outline.contains(x, y)) {
+			return true;
+		}
+		if (pen == null) {
+			return false;
+		}
+		if (pen.type == StrokeType.CENTERED || !isClosed()) {
+			return Rasterizer.stroke(pen, pen.width).createStrokedShape(outline).contains(x, y);
+		}
+		if (!Rasterizer.stroke(pen, 2 * pen.width).createStrokedShape(outline).contains(x, y)) {
+			return false;
+		}
+		return outline.contains(x, y) == (pen.type == StrokeType.INSIDE);
+	}
+
+	@Override
+	protected void draw(Graphics2D g) {
+		Path2D.Double outline = new Path2D.Double();
+		path(Path.of(outline));
+		paint(g, outline);
+	}
+	
+	@Override
+	protected void svg(SvgWriter out) throws IOException {
+		SvgWriter.PathData data = new SvgWriter.PathData();
+		path(data);
+		String d = data.toString();
+		if (pen == null || pen.type == StrokeType.CENTERED || !isClosed()) {
+			out.append("<path").attribute("d", d);
+			svgStyle(out, 1);
+			out.append("/>\n");
+			return;
+		}
+		// SVG only has centered strokes: clip or mask a stroke of twice the width
+		out.append("<path").attribute("d", d).paint("fill", color).append("/>\n");
+		String id = out.nextId();
+		if (pen.type == StrokeType.INSIDE) {
+			out.append("<clipPath").attribute("id", id).append("><path")
+					.attribute("d", d).append("/></clipPath>\n");
+		} else {
+			Rect r = bounds(Util.identityTransform);
+			out.append("<mask").attribute("id", id).attribute("maskUnits", "userSpaceOnUse")
+					.attribute("x", r.x - 1).attribute("y", r.y - 1)
+					.attribute("width", r.width + 2).attribute("height", r.height + 2)
+					.append("><rect").attribute("x", r.x - 1).attribute("y", r.y - 1)
+					.attribute("width", r.width + 2).attribute("height", r.height + 2)
+					.attribute("fill", "white").append("/><path").attribute("d", d)
+					.attribute("fill", "black").append("/></mask>\n");
+		}
+		out.append("<path").attribute("d", d).attribute("fill", "none");
+		svgStroke(out, 2);
+		out.attribute(pen.type == StrokeType.INSIDE ? "clip-path" : "mask", "url(#" + id + ")");
+		out.append("/>\n");
+	}
+	
+	/**
+	 * Writes the fill and stroke attributes of this shape.
+	 * @param out the SVG writer
+	 * @param widthFactor factor for the width of the pen
+	 * @throws IOException if writing fails
+	 */
+	protected void svgStyle(SvgWriter out, double widthFactor) throws IOException {
+		out.paint("fill", color);
+		svgStroke(out, widthFactor);
+	}
+	
+	/**
+	 * Writes the stroke attributes of this shape.
+	 * @param out the SVG writer
+	 * @param widthFactor factor for the width of the pen
+	 * @throws IOException if writing fails
+	 */
+	private void svgStroke(SvgWriter out, double widthFactor) throws IOException {
+		if (pen == null) {
+			return;
+		}
+		out.paint("stroke", pen.color).attribute("stroke-width", widthFactor * pen.width)
+				.attribute("stroke-linecap", pen.cap.name().toLowerCase())
+				.attribute("stroke-linejoin", pen.join.name().toLowerCase());
+	}
+
+	/**
+	 * Fills the given outline with the color of this shape and strokes it 
+	 * with the pen of this shape. Inside and outside strokes are computed 
+	 * exactly as the intersection or difference of a stroke of twice the 
+	 * width and the outline.
+	 * @param g the Java2D graphics
+	 * @param outline the outline
+	 */
+	protected void paint(Graphics2D g, java.awt.Shape outline) {
+		if (color != null) {
+			g.setColor(Rasterizer.color(color));
+			g.fill(outline);
+		}
+		if (pen == null) {
+			return;
+		}
+		g.setColor(Rasterizer.color(pen.color));
+		if (pen.type == StrokeType.CENTERED || !isClosed()) {
+			g.setStroke(Rasterizer.stroke(pen, pen.width));
+			g.draw(outline);
+			return;
+		}
+		Area stroke = new Area(Rasterizer.stroke(pen, 2 * pen.width).createStrokedShape(outline));
+		if (pen.type == StrokeType.INSIDE) {
+			stroke.intersect(new Area(outline));
+		} else {
+			stroke.subtract(new Area(outline));
+		}
+		g.fill(stroke);
+	}
+
+	/**
+	 * Sets fill and stroke of the JavaFX shape to the color and pen of this 
+	 * shape.
+	 * @param s the JavaFX shape
+	 */
+	protected void style(javafx.scene.shape.Shape s) {
 		s.setFill(color);
 		if (pen != null) {
 			s.setStroke(pen.color);
@@ -48,41 +396,25 @@ abstract class Shape extends Image {
 		} else {
 			s.setStroke(null);
 		}
+	}
+	
+	/**
+	 * Checks whether the given image is of the same class and size as this 
+	 * shape.
+	 * @param image the image to compare with
+	 * @return true if class, width, and height are the same
+	 */
+	protected boolean sameSize(Image image) {
+		return image.getClass() == getClass() && 
+				image.width == width && image.height == height;
+	}
+
+	protected javafx.scene.Node render(javafx.scene.shape.Shape s) {
+		FrameStats.countNode();
+		style(s);
 //		if (clip != null) {
 //			s.setClip(clip.render());
 //		}
-		if (pressFunction != null) {
-//			System.out.println("Shape.render: pressFunction = " + pressFunction);
-//			System.out.println(Thread.currentThread());
-			s.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_PRESSED, (javafx.scene.input.MouseEvent e) -> {
-				pressFunction.apply(new MouseEvent(e), pressFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (releaseFunction != null) {
-//			System.out.println("Shape.render: releaseFunction = " + releaseFunction);
-//			System.out.println(Thread.currentThread());
-			s.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_RELEASED, (javafx.scene.input.MouseEvent e) -> {
-				releaseFunction.apply(new MouseEvent(e), releaseFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (moveFunction != null) {
-			s.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_MOVED, (javafx.scene.input.MouseEvent e) -> {
-				moveFunction.apply(new MouseEvent(e), moveFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
-		if (dragFunction != null) {
-			s.addEventHandler(javafx.scene.input.MouseEvent.MOUSE_DRAGGED, (javafx.scene.input.MouseEvent e) -> {
-				dragFunction.apply(new MouseEvent(e), dragFunctionTarget);
-				e.consume();
-				ApplicationBase.draw();
-			});
-		}
 		return s;
 	}
 	
@@ -15,6 +15,7 @@
  */
 package prog1.graphics;
 
+import java.util.Arrays;
 import javafx.scene.paint.Color;
 
 /**
@@ -22,42 +23,44 @@ import javafx.scene.paint.Color;
  * @author michaelrohs
  */
 class Star extends Shape {
-	private final Double[] points = new Double[2 * 5];
+	private final double[] points = new double[2 * 5];
 
 	public Star(double length, Color color, Pen pen) {
 		super(0, 0, color, pen);
 		final double alphaStep = 2 * Math.PI / 5;
 		double alpha = -Math.PI / 2;
-		double x1 = Double.POSITIVE_INFINITY;
-		double y1 = Double.POSITIVE_INFINITY;
-		double x2 = Double.NEGATIVE_INFINITY;
-		double y2 = Double.NEGATIVE_INFINITY;
 		int i = 0;
 		do {
 			double x = length * Math.cos(alpha);
 			double y = length * Math.sin(alpha);
-			x1 = Math.min(x1, x);
-			y1 = Math.min(y1, y);
-			x2 = Math.max(x2, x);
-			y2 = Math.max(y2, y);
 			points[i] = x;
 			points[i + 1] = y;
 			i = (i + 4) % points.length;
 			alpha += alphaStep;
 		} while (i != 0);
-		for (i = 0; i < points.length; ) {
-			points[i++] -= x1;
-			points[i++] -= y1;
-		}
-		this.width = x2 - x1;
-		this.height = y2 - y1;
+		fitPoints(points);
 	}
 	
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.shape.Polygon polygon = new javafx.scene.shape.Polygon();
-		polygon.getPoints().setAll(points);
+		setPoints(polygon.getPoints(), points);
 		return render(polygon);
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.polygon(true, points);
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, true, points);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image) && Arrays.equals(((Star) image).points, points);
+	}
+
 }
@@ -15,6 +15,7 @@
  */
 package prog1.graphics;
 
+import java.util.Arrays;
 import javafx.scene.paint.Color;
 
 /**
@@ -22,50 +23,48 @@ import javafx.scene.paint.Color;
  * @author michaelrohs
  */
 class StarRadial extends Shape {
-	private final Double[] points;
+	private final double[] points;
 
 	public StarRadial(int spikes, double innerRadius, double outerRadius, Color color, Pen pen) {
 		super(0, 0, color, pen);
-		points = new Double[4 * spikes];
+		points = new double[4 * spikes];
 		final double alphaStep = Math.PI / spikes;
 		double alpha = -Math.PI / 2;
-		double x1 = Double.POSITIVE_INFINITY; // todo: use Util.boundingBoxXY with +1
-		double y1 = Double.POSITIVE_INFINITY;
-		double x2 = Double.NEGATIVE_INFINITY;
-		double y2 = Double.NEGATIVE_INFINITY;
 		for (int i = 0; i < points.length; ) {
 			double x = innerRadius * Math.cos(alpha);
 			double y = innerRadius * Math.sin(alpha);
-			x1 = Math.min(x1, x);
-			y1 = Math.min(y1, y);
-			x2 = Math.max(x2, x);
-			y2 = Math.max(y2, y);
 			points[i++] = x;
 			points[i++] = y;
 			alpha += alphaStep;
 			x = outerRadius * Math.cos(alpha);
 			y = outerRadius * Math.sin(alpha);
-			x1 = Math.min(x1, x);
-			y1 = Math.min(y1, y);
-			x2 = Math.max(x2, x);
-			y2 = Math.max(y2, y);
 			points[i++] = x;
 			points[i++] = y;
 			alpha += alphaStep;
 		}
-		for (int i = 0; i < points.length; ) {
-			points[i++] -= x1;
-			points[i++] -= y1;
-		}
-		this.width = x2 - x1;
-		this.height = y2 - y1;
+		fitPoints(points);
 	}
 	
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.shape.Polygon polygon = new javafx.scene.shape.Polygon();
-		polygon.getPoints().setAll(points);
+		setPoints(polygon.getPoints(), points);
 		return render(polygon);
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.polygon(true, points);
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, true, points);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		return sameSize(image) && Arrays.equals(((StarRadial) image).points, points);
+	}
+
 }
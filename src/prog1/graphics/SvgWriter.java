@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.io.IOException;
+import javafx.scene.paint.Color;
+
+/**
+ * Writes SVG elements to an Appendable. Elements are written as soon as 
+ * they are visited, so the whole document is never held in memory.
+ * @author michaelrohs
+ */
+class SvgWriter {
+	private final Appendable out;
+	private int ids; // number of generated ids
+
+	SvgWriter(Appendable out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes a string as is.
+	 * @param s the string
+	 * @return this writer
+	 * @throws IOException if the underlying Appendable fails
+	 */
+	SvgWriter append(String s) throws IOException {
+		out.append(s);
+		return this;
+	}
+
+	/**
+	 * Writes a number with at most three decimal places.
+	 * @param v the number
+	 * @return this writer
+	 * @throws IOException if the underlying Appendable fails
+	 */
+	SvgWriter append(double v) throws IOException {
+		out.append(number(v));
+		return this;
+	}
+
+	/**
+	 * Writes an attribute with a numeric value, preceded by a space.
+	 * @param name the attribute name
+	 * @param v the value
+	 * @return this writer
+	 * @throws IOException if the underlying Appendable fails
+	 */
+	SvgWriter attribute(String name, double v) throws IOException {
+		out.append(' ').append(name).append("=\"").append(number(v)).append('"');
+		return this;
+	}
+
+	/**
+	 * Writes an attribute, preceded by a space. The value is escaped.
+	 * @param name the attribute name
+	 * @param value the value
+	 * @return this writer
+	 * @throws IOException if the underlying Appendable fails
+	 */
+	SvgWriter attribute(String name, String value) throws IOException {
+		out.append(' ').append(name).append("=\"").append(escape(value)).append('"');
+		return this;
+	}
+
+	/**
+	 * Writes the attributes for a fill or stroke paint, e.g., 
+	 * {@code fill="#ff0000" fill-opacity="0.5"}.
+	 * @param name "fill" or "stroke"
+	 * @param c the color, or null for no paint
+	 * @return this writer
+	 * @throws IOException if the underlying Appendable fails
+	 */
+	SvgWriter paint(String name, Color c) throws IOException {
+		if (c == null || c.getOpacity() == 0) {
+			return attribute(name, "none");
+		}
+		attribute(name, String.format("#%02x%02x%02x", 
+				Math.round(c.getRed() * 255), Math.round(c.getGreen() * 255), Math.round(c.getBlue() * 255)));
+		if (c.getOpacity() < 1) {
+			attribute(name + "-opacity", c.getOpacity());
+		}
+		return this;
+	}
+
+	/**
+	 * Returns a new id for referencing clip paths and masks.
+	 * @return the id
+	 */
+	String nextId() {
+		ids++;
+		return "id" + ids;
+	}
+
+	/**
+	 * Formats a number with at most three decimal places.
+	 * @param v the number
+	 * @return the formatted number
+	 */
+	static String number(double v) {
+		double r = Math.round(v * 1000) / 1000.0;
+		if (r == (long) r) {
+			return Long.toString((long) r);
+		}
+		return Double.toString(r);
+	}
+
+	/**
+	 * Formats a coefficient of a transformation matrix with at most six 
+	 * decimal places, since rounding errors are multiplied by the 
+	 * coordinates.
+	 * @param v the coefficient
+	 * @return the formatted coefficient
+	 */
+	static String coefficient(double v) {
+		double r = Math.round(v * 1e6) / 1e6;
+		if (r == (long) r) {
+			return Long.toString((long) r);
+		}
+		return Double.toString(r);
+	}
+
+	/**
+	 * Replaces the characters that have a special meaning in XML.
+	 * @param s the string
+	 * @return the escaped string
+	 */
+	static String escape(String s) {
+		StringBuilder sb = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			String e;
+			switch (c) {
+				case '<': e = "&lt;"; break;
+				case '>': e = "&gt;"; break;
+				case '&': e = "&amp;"; break;
+				case '"': e = "&quot;"; break;
+				default: e = null;
+			}
+			if (e != null && sb == null) {
+				sb = new StringBuilder(s.length() + 16);
+				sb.append(s, 0, i);
+			}
+			if (sb != null) {
+				if (e != null) {
+					sb.append(e);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb == null ? s : sb.toString();
+	}
+
+	/**
+	 * Collects the outline of a shape as SVG path data.
+	 */
+	static class PathData implements Path {
+		private final StringBuilder d = new StringBuilder();
+		private boolean hasCurrentPoint;
+
+		private void point(char command, double x, double y) {
+			if (d.length() > 0) {
+				d.append(' ');
+			}
+			d.append(command).append(number(x)).append(' ').append(number(y));
+		}
+
+		@Override
+		public void moveTo(double x, double y) {
+			point('M', x, y);
+			hasCurrentPoint = true;
+		}
+
+		@Override
+		public void lineTo(double x, double y) {
+			point('L', x, y);
+			hasCurrentPoint = true;
+		}
+
+		@Override
+		public void arc(double cx, double cy, double rx, double ry, double startAngle, double length) {
+			double a = Math.toRadians(startAngle);
+			double x = cx + rx * Math.cos(a);
+			double y = cy - ry * Math.sin(a);
+			if (hasCurrentPoint) {
+				lineTo(x, y);
+			} else {
+				moveTo(x, y);
+			}
+			if (Math.abs(length) >= 360) { // a full ellipse needs two arcs
+				arcTo(cx, cy, rx, ry, startAngle + Math.signum(length) * 180, Math.signum(length) * 180);
+				arcTo(cx, cy, rx, ry, startAngle, Math.signum(length) * 180);
+			} else {
+				arcTo(cx, cy, rx, ry, startAngle + length, length);
+			}
+		}
+
+		private void arcTo(double cx, double cy, double rx, double ry, double endAngle, double length) {
+			double a = Math.toRadians(endAngle);
+			d.append(" A").append(number(rx)).append(' ').append(number(ry)).append(" 0 ")
+					.append(Math.abs(length) > 180 ? '1' : '0').append(' ')
+					.append(length > 0 ? '0' : '1').append(' ')
+					.append(number(cx + rx * Math.cos(a))).append(' ').append(number(cy - ry * Math.sin(a)));
+		}
+
+		@Override
+		public void rect(double x, double y, double width, double height) {
+			moveTo(x, y);
+			lineTo(x + width, y);
+			lineTo(x + width, y + height);
+			lineTo(x, y + height);
+			closePath();
+		}
+
+		@Override
+		public void closePath() {
+			d.append(" Z");
+		}
+
+		@Override
+		public String toString() {
+			return d.toString();
+		}
+	}
+
+}
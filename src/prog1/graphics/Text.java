@@ -15,8 +15,14 @@
  */
 package prog1.graphics;
 
-import javafx.geometry.Bounds;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import java.util.Objects;
 import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
@@ -27,31 +33,18 @@ import javafx.scene.text.TextAlignment;
  */
 class Text extends Shape {
 	private final String string;
-	private final javafx.scene.text.Font font;
+	private final String fontName; // null for the default font
+	private final double fontSize;
+	private javafx.scene.text.Font font; // for JavaFX, created on first use unless given
+	private java.awt.Font awtFont; // for Java2D and SVG, created on first use
 	private final double wrappingWidth;
 	private final TextAlignment alignment;
+	private String wrapped; // string with line breaks for the wrapping width, computed on first use
 
 	public Text(String string, double fontSize, Color color, Pen pen, 
 			double wrappingWidth, TextAlignment alignment) 
 	{
-		super(0, 0, color, pen);
-		this.string = string;
-		this.wrappingWidth = wrappingWidth;
-		this.alignment = alignment;
-
-		javafx.scene.text.Text text = new javafx.scene.text.Text(string);
-		font = new javafx.scene.text.Font(fontSize);
-		text.setFont(font);
-		text.setTextOrigin(VPos.TOP);
-		text.setWrappingWidth(wrappingWidth);
-		text.setTextAlignment(alignment);
-		// render(text);
-	
-		// System.out.println(text.getBoundsInLocal());
-		// System.out.println(text.getBoundsInParent());
-		Bounds bounds = text.getBoundsInLocal();
-		width = bounds.getWidth();
-		height = bounds.getHeight();
+		this(string, null, fontSize, color, pen, wrappingWidth, alignment);
 	}
 	
 	public Text(String string, String fontName, double fontSize, Color color, Pen pen, 
@@ -59,22 +52,16 @@ class Text extends Shape {
 	{
 		super(0, 0, color, pen);
 		this.string = string;
+		this.fontName = fontName;
+		this.fontSize = fontSize;
 		this.wrappingWidth = wrappingWidth;
 		this.alignment = alignment;
 
-		javafx.scene.text.Text text = new javafx.scene.text.Text(string);
-		font = new javafx.scene.text.Font(fontName, fontSize);
-		text.setFont(font);
-		text.setTextOrigin(VPos.TOP);
-		text.setWrappingWidth(wrappingWidth);
-		text.setTextAlignment(alignment);
-		// render(text);
-	
-		// System.out.println(text.getBoundsInLocal());
-		// System.out.println(text.getBoundsInParent());
-		Bounds bounds = text.getBoundsInLocal();
-		width = bounds.getWidth();
-		height = bounds.getHeight();
+		Size size = ApplicationBase.isToolkitRunning() ? 
+				TextMetrics.measure(string, font(), wrappingWidth, alignment) : 
+				TextMetrics.measure(string, awtFont(), wrappingWidth, alignment);
+		width = size.width;
+		height = size.height;
 	}
 
         public Text(String string, Font font, Color color, Pen pen, 
@@ -82,28 +69,32 @@ class Text extends Shape {
 	{
 		super(0, 0, color, pen);
 		this.string = string;
+		this.fontName = font.getName();
+		this.fontSize = font.getSize();
 		this.wrappingWidth = wrappingWidth;
 		this.alignment = alignment;
 
-		javafx.scene.text.Text text = new javafx.scene.text.Text(string);
 		this.font = font;
-		text.setFont(font);
-		text.setTextOrigin(VPos.TOP);
-		text.setWrappingWidth(wrappingWidth);
-		text.setTextAlignment(alignment);
-		// render(text);
-	
-		// System.out.println(text.getBoundsInLocal());
-		// System.out.println(text.getBoundsInParent());
-		Bounds bounds = text.getBoundsInLocal();
-		width = bounds.getWidth();
-		height = bounds.getHeight();
+		Size size = TextMetrics.measure(string, font, wrappingWidth, alignment);
+		width = size.width;
+		height = size.height;
+	}
+
+	/**
+	 * Returns the JavaFX font. Creating it needs the JavaFX toolkit.
+	 * @return the JavaFX font
+	 */
+	private javafx.scene.text.Font font() {
+		if (font == null) {
+			font = fontName == null ? new Font(fontSize) : new Font(fontName, fontSize);
+		}
+		return font;
 	}
 
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.text.Text text = new javafx.scene.text.Text(string);
-		text.setFont(font);
+		text.setFont(font());
 		text.setTextOrigin(VPos.TOP);
 		text.setWrappingWidth(wrappingWidth);
 		text.setTextAlignment(alignment);
@@ -131,4 +122,176 @@ class Text extends Shape {
 		return render(text);
 	}
 
+	/**
+	 * Appends the bounding rectangle of the text. The graphics context 
+	 * does not provide the outlines of glyphs.
+	 * @param p the path to append to
+	 */
+	@Override
+	protected void path(Path p) {
+		p.rect(0, 0, width, height);
+	}
+
+	@Override
+	protected void draw(GraphicsContext gc) {
+		gc.setFont(font());
+		gc.setTextBaseline(VPos.TOP);
+		double w = wrappingWidth > 0 ? wrappingWidth : width;
+		double x = 0;
+		if (alignment == TextAlignment.CENTER) {
+			gc.setTextAlign(TextAlignment.CENTER);
+			x = w / 2.0;
+		} else if (alignment == TextAlignment.RIGHT) {
+			gc.setTextAlign(TextAlignment.RIGHT);
+			x = w;
+		} else {
+			gc.setTextAlign(TextAlignment.LEFT);
+		}
+		String s = wrappingWidth > 0 ? wrapped() : string;
+		if (fillStyle(gc)) {
+			gc.fillText(s, x, 0);
+		}
+		if (strokeStyle(gc)) {
+			gc.strokeText(s, x, 0);
+		}
+	}
+
+	/**
+	 * Returns the string with line breaks for the wrapping width, as 
+	 * measured by JavaFX.
+	 * @return the string with line breaks
+	 */
+	private String wrapped() {
+		if (wrapped == null) {
+			javafx.scene.text.Text text = new javafx.scene.text.Text();
+			text.setFont(font());
+			wrapped = TextMetrics.wrap(string, wrappingWidth, line -> {
+				text.setText(line);
+				return text.getLayoutBounds().getWidth();
+			});
+		}
+		return wrapped;
+	}
+
+	/**
+	 * Draws the outlines of the glyphs, using the corresponding AWT font.
+	 * @param g the Java2D graphics to draw onto
+	 */
+	@Override
+	protected void draw(Graphics2D g) {
+		java.awt.Font f = awtFont();
+		FontRenderContext frc = TextMetrics.FRC;
+		LineMetrics lm = f.getLineMetrics("Xg", frc);
+		String[] lines = TextMetrics.lines(string, f, wrappingWidth);
+		double w = TextMetrics.width(f, lines, wrappingWidth);
+		Path2D.Double outline = new Path2D.Double(Path2D.WIND_NON_ZERO);
+		double y = lm.getAscent();
+		for (String line : lines) {
+			double lineWidth = f.getStringBounds(line, frc).getWidth();
+			double x = 0;
+			if (alignment == TextAlignment.CENTER) {
+				x = (w - lineWidth) / 2.0;
+			} else if (alignment == TextAlignment.RIGHT) {
+				x = w - lineWidth;
+			}
+			outline.append(f.createGlyphVector(frc, line).getOutline((float) x, (float) y), false);
+			y += lm.getHeight();
+		}
+		paint(g, outline);
+	}
+
+	/**
+	 * Writes a text element with one tspan per line. Positions are computed 
+	 * with the corresponding AWT font. The pen is always centered.
+	 * @param out the SVG writer
+	 * @throws IOException if writing fails
+	 */
+	@Override
+	protected void svg(SvgWriter out) throws IOException {
+		java.awt.Font f = awtFont();
+		LineMetrics lm = f.getLineMetrics("Xg", TextMetrics.FRC);
+		String[] lines = TextMetrics.lines(string, f, wrappingWidth);
+		double w = TextMetrics.width(f, lines, wrappingWidth);
+		double x = 0;
+		String anchor = "start";
+		if (alignment == TextAlignment.CENTER) {
+			x = w / 2.0;
+			anchor = "middle";
+		} else if (alignment == TextAlignment.RIGHT) {
+			x = w;
+			anchor = "end";
+		}
+		String face = f.getFontName().toLowerCase();
+		out.append("<text").attribute("font-family", f.getFamily()).attribute("font-size", fontSize);
+		if (f.isBold() || face.contains("bold")) {
+			out.attribute("font-weight", "bold");
+		}
+		if (f.isItalic() || face.contains("italic") || face.contains("oblique")) {
+			out.attribute("font-style", "italic");
+		}
+		out.attribute("text-anchor", anchor).attribute("xml:space", "preserve");
+		svgStyle(out, 1);
+		out.append(">");
+		double y = lm.getAscent();
+		for (String line : lines) {
+			out.append("<tspan").attribute("x", x).attribute("y", y).append(">")
+					.append(SvgWriter.escape(line)).append("</tspan>");
+			y += lm.getHeight();
+		}
+		out.append("</text>\n");
+	}
+
+	/**
+	 * Returns the AWT font that corresponds to the font of this text. Does 
+	 * not need the JavaFX toolkit, unless a JavaFX font has been given. A 
+	 * font name that AWT does not know is split into family and style, as 
+	 * in "Arial Bold".
+	 * @return the AWT font
+	 */
+	private java.awt.Font awtFont() {
+		if (awtFont == null) {
+			String name = fontName;
+			String style = "";
+			if (font != null) {
+				name = font.getFamily();
+				style = font.getStyle().toLowerCase();
+			}
+			if (name == null || name.equals("System")) {
+				name = java.awt.Font.DIALOG;
+			}
+			java.awt.Font f = new java.awt.Font(name, java.awt.Font.PLAIN, 1);
+			if (font == null && f.getFamily().equals(java.awt.Font.DIALOG) && 
+					!name.equalsIgnoreCase(java.awt.Font.DIALOG)) 
+			{
+				style = name.toLowerCase();
+				name = name.replaceAll("(?i)\\s+(regular|bold|italic|oblique)\\b", "");
+			}
+			int awtStyle = java.awt.Font.PLAIN;
+			if (style.contains("bold")) {
+				awtStyle |= java.awt.Font.BOLD;
+			}
+			if (style.contains("italic") || style.contains("oblique")) {
+				awtStyle |= java.awt.Font.ITALIC;
+			}
+			if (awtStyle != java.awt.Font.PLAIN || !name.equals(f.getName())) {
+				f = new java.awt.Font(name, awtStyle, 1);
+			}
+			awtFont = f.deriveFont((float) fontSize);
+		}
+		return awtFont;
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsRect(e);
+	}
+
+	@Override
+	protected boolean sameGeometry(Image image) {
+		if (!sameSize(image)) return false;
+		Text t = (Text) image;
+		return t.string.equals(string) && Objects.equals(t.fontName, fontName) && 
+				t.fontSize == fontSize && t.wrappingWidth == wrappingWidth && t.alignment == alignment;
+	}
+
 }
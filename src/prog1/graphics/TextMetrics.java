@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 michaelrohs.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package prog1.graphics;
+
+import java.awt.font.FontRenderContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Caches the measured sizes of texts, so that a label that is created 
+ * again and again, like the numbers in the nodes of a tree, is only 
+ * measured once. The least recently used sizes are removed when the cache 
+ * is full. Texts are measured by JavaFX if it is running, otherwise with 
+ * the corresponding AWT font.
+ * @author michaelrohs
+ */
+class TextMetrics {
+	/**
+	 * Maximum number of cached sizes.
+	 */
+	private static final int MAX_SIZE = 4096;
+
+	/**
+	 * Antialiased, fractional metrics, like JavaFX text.
+	 */
+	static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+
+	private static final Map<Key, Size> cache = 
+			new LinkedHashMap<Key, Size>(256, 0.75f, true) { // access order
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Size> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/**
+	 * The properties of a text that determine its size.
+	 */
+	private static class Key {
+		final String string;
+		final Object font; // JavaFX or AWT font
+		final double wrappingWidth;
+		final TextAlignment alignment;
+
+		Key(String string, Object font, double wrappingWidth, TextAlignment alignment) {
+			this.string = string;
+			this.font = font;
+			this.wrappingWidth = wrappingWidth;
+			this.alignment = alignment;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return string.equals(k.string) && font.equals(k.font) 
+					&& wrappingWidth == k.wrappingWidth && alignment == k.alignment;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = string.hashCode();
+			h = 31 * h + font.hashCode();
+			h = 31 * h + Double.hashCode(wrappingWidth);
+			h = 31 * h + alignment.hashCode();
+			return h;
+		}
+	}
+
+	/**
+	 * This class is meant to be used in a static way.
+	 */
+	private TextMetrics() {}
+
+	/**
+	 * Returns the size of the text as measured by JavaFX. Measures the text 
+	 * if its size is not in the cache.
+	 * @param string the text
+	 * @param font the font
+	 * @param wrappingWidth the wrapping width, 0 for no wrapping
+	 * @param alignment the alignment of the lines
+	 * @return the size
+	 */
+	static Size measure(String string, Font font, double wrappingWidth, TextAlignment alignment) {
+		Key key = new Key(string, font, wrappingWidth, alignment);
+		Size size = cached(key);
+		if (size == null) {
+			javafx.scene.text.Text text = new javafx.scene.text.Text(string);
+			text.setFont(font);
+			text.setTextOrigin(VPos.TOP);
+			text.setWrappingWidth(wrappingWidth);
+			text.setTextAlignment(alignment);
+			Bounds bounds = text.getBoundsInLocal();
+			size = new Size(bounds.getWidth(), bounds.getHeight());
+			cache(key, size);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the size of the text as measured with an AWT font, without 
+	 * JavaFX. Measures the text if its size is not in the cache.
+	 * @param string the text
+	 * @param font the AWT font
+	 * @param wrappingWidth the wrapping width, 0 for no wrapping
+	 * @param alignment the alignment of the lines
+	 * @return the size
+	 */
+	static Size measure(String string, java.awt.Font font, double wrappingWidth, TextAlignment alignment) {
+		Key key = new Key(string, font, wrappingWidth, alignment);
+		Size size = cached(key);
+		if (size == null) {
+			String[] lines = lines(string, font, wrappingWidth);
+			size = new Size(width(font, lines, wrappingWidth), 
+					lines.length * font.getLineMetrics("Xg", FRC).getHeight());
+			cache(key, size);
+		}
+		return size;
+	}
+
+	private static Size cached(Key key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	private static void cache(Key key, Size size) {
+		synchronized (cache) {
+			cache.put(key, size);
+		}
+	}
+
+	/**
+	 * Returns the lines of the text, wrapped as measured with the AWT font.
+	 * @param string the text
+	 * @param font the AWT font
+	 * @param wrappingWidth the wrapping width, 0 for no wrapping
+	 * @return the lines
+	 */
+	static String[] lines(String string, java.awt.Font font, double wrappingWidth) {
+		String s = wrappingWidth > 0 ? 
+				wrap(string, wrappingWidth, line -> font.getStringBounds(line, FRC).getWidth()) : 
+				string;
+		return s.split("\n", -1);
+	}
+
+	/**
+	 * Returns the width within which the lines are aligned: the wrapping 
+	 * width, if set, otherwise the width of the widest line.
+	 * @param font the AWT font
+	 * @param lines the lines
+	 * @param wrappingWidth the wrapping width, 0 for no wrapping
+	 * @return the width
+	 */
+	static double width(java.awt.Font font, String[] lines, double wrappingWidth) {
+		double w = wrappingWidth;
+		if (w <= 0) {
+			for (String line : lines) {
+				w = Math.max(w, font.getStringBounds(line, FRC).getWidth());
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * Breaks the lines of the string at spaces, such that the lines are not 
+	 * wider than the wrapping width (unless a single word is wider).
+	 * @param string the string
+	 * @param wrappingWidth the maximum width of a line
+	 * @param width computes the width of a line
+	 * @return the string with line breaks
+	 */
+	static String wrap(String string, double wrappingWidth, ToDoubleFunction<String> width) {
+		StringBuilder sb = new StringBuilder();
+		for (String paragraph : string.split("\n", -1)) {
+			if (sb.length() > 0) {
+				sb.append('\n');
+			}
+			String line = "";
+			for (String word : paragraph.split(" ")) {
+				String candidate = line.isEmpty() ? word : line + " " + word;
+				if (!line.isEmpty() && width.applyAsDouble(candidate) > wrappingWidth) {
+					sb.append(line).append('\n');
+					line = word;
+				} else {
+					line = candidate;
+				}
+			}
+			sb.append(line);
+		}
+		return sb.toString();
+	}
+
+}
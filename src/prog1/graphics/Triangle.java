@@ -30,14 +30,28 @@ class Triangle extends Shape {
 		// height^2 = length^2 - 0.25 * length^2
 	}
 	
+	private double[] points() {
+		return new double[] {
+			0.0, height,
+			width, height,
+			width / 2.0, 0.0};
+	}
+	
 	@Override
 	protected javafx.scene.Node render() {
 		javafx.scene.shape.Polygon polygon = new javafx.scene.shape.Polygon();
-		polygon.getPoints().addAll(new Double[] {
-			0.0, height,
-			width, height,
-			width / 2.0, 0.0});
+		setPoints(polygon.getPoints(), points());
 		return render(polygon);
 	}
 
+	@Override
+	protected void path(Path p) {
+		p.polygon(true, points());
+	}
+
+	@Override
+	void addBounds(Extent e) {
+		addBoundsXY(e, true, points());
+	}
+
 }
@@ -15,7 +15,6 @@
  */
 package prog1.graphics;
 
-import javafx.geometry.Point2D;
 import javafx.scene.transform.Affine;
 import javafx.scene.transform.Transform;
 
@@ -59,20 +58,9 @@ public class Util {
 	 * @return the bounding box
 	 */
 	public static Rect boundingBoxXY(Transform t, double... ps) {
-		double x1 = Double.POSITIVE_INFINITY;
-		double y1 = Double.POSITIVE_INFINITY;
-		double x2 = Double.NEGATIVE_INFINITY;
-		double y2 = Double.NEGATIVE_INFINITY;
-		for (int i = 0; i < ps.length; ) {
-			double x = ps[i++];
-			double y = ps[i++];
-			Point2D p = t.transform(x, y);
-			x1 = Math.min(x1, p.getX());
-			y1 = Math.min(y1, p.getY());
-			x2 = Math.max(x2, p.getX());
-			y2 = Math.max(y2, p.getY());
-		}
-		return new Rect(x1, y1, x2 - x1, y2 - y1);
+		Extent e = new Extent(t);
+		e.addPoints(ps);
+		return e.toRect();
 	}
 	
 	/**